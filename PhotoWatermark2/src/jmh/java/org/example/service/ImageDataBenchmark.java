@@ -0,0 +1,67 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageData 的基准测试
+ * construct 测量通过 ImageIO 读取文件头中尺寸的开销，probe 测量文件夹导入时按魔数识别并直接解析文件头的开销，
+ * thumbnail 还包括首次生成缩略图
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class ImageDataBenchmark {
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    private Path directory;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("image-data-bench");
+        file = SyntheticImages.writeJpeg(directory, megapixels);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticImages.delete(directory);
+    }
+
+    @Benchmark
+    public ImageData construct() {
+        return new ImageData(file);
+    }
+
+    @Benchmark
+    public ImageData probe() {
+        return ImageImportService.probe(file.toPath());
+    }
+
+    @Benchmark
+    public Image thumbnail() {
+        return new ImageData(file).getImage();
+    }
+}
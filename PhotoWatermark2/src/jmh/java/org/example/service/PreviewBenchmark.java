@@ -0,0 +1,77 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+import org.example.model.WatermarkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PreviewService.generatePreview 的基准测试
+ * adjustWatermark 对应拖动水印滑块：代理图被复用，只重新绘制水印；
+ * selectImage 对应切换图片：每次都从缓存的原图重新生成代理图
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class PreviewBenchmark {
+    private static final int PREVIEW_WIDTH = 800;
+    private static final int PREVIEW_HEIGHT = 600;
+
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    private Path directory;
+    private ImageData imageData;
+    private WatermarkConfig config;
+    private PreviewService previewService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("preview-bench");
+        imageData = new ImageData(SyntheticImages.writeJpeg(directory, megapixels));
+        ImageCache.getDefault().getFullImage(imageData);
+
+        config = new WatermarkConfig();
+        config.setText("© PhotoWatermark 基准测试");
+        config.setFontSize(72);
+        config.setColor("#FFFFFF");
+        config.setOpacity(60);
+        config.setRotation(30);
+        previewService = new PreviewService();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ImageCache.getDefault().release(imageData);
+        SyntheticImages.delete(directory);
+    }
+
+    @Benchmark
+    public ImageIcon adjustWatermark() {
+        return previewService.generatePreview(imageData, config, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+    }
+
+    @Benchmark
+    public ImageIcon selectImage() {
+        return new PreviewService().generatePreview(imageData, config, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.service;
+
+import org.example.model.WatermarkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WatermarkService.resizeImage 的基准测试，按百分比缩小到一半
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class ResizeBenchmark {
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    @Param({"LANCZOS3", "BICUBIC", "PROGRESSIVE_BILINEAR"})
+    private String filter;
+
+    private BufferedImage source;
+    private WatermarkConfig config;
+    private WatermarkService watermarkService;
+
+    @Setup
+    public void setUp() {
+        source = SyntheticImages.create(megapixels);
+        config = new WatermarkConfig();
+        config.setResizeEnabled(true);
+        config.setResizePercentage(50);
+        config.setResizeFilter(filter);
+        watermarkService = new WatermarkService();
+    }
+
+    @Benchmark
+    public BufferedImage resizeImage() {
+        return watermarkService.resizeImage(source, config);
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WatermarkService.saveImage 的基准测试
+ * 每次调用覆盖同一个输出文件，测量的是编码和写入的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class SaveImageBenchmark {
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    @Param({"PNG", "JPEG"})
+    private String format;
+
+    private Path directory;
+    private BufferedImage image;
+    private File outputFile;
+    private WatermarkService watermarkService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("save-bench");
+        image = SyntheticImages.create(megapixels);
+        outputFile = directory.resolve("output." + format.toLowerCase()).toFile();
+        watermarkService = new WatermarkService();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticImages.delete(directory);
+    }
+
+    @Benchmark
+    public long saveImage() throws IOException {
+        watermarkService.saveImage(image, outputFile, format, 90);
+        return outputFile.length();
+    }
+}
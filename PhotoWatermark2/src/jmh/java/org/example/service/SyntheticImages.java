@@ -0,0 +1,85 @@
+package org.example.service;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的合成图片
+ * 内容为渐变叠加固定种子的噪声，JPEG 压缩率接近真实照片；同一尺寸每次生成的像素完全相同，
+ * 因此不同版本之间的结果可以直接比较
+ */
+final class SyntheticImages {
+    private SyntheticImages() {
+    }
+
+    /**
+     * 生成指定像素数（百万像素）、宽高比为 4:3 的 3BYTE_BGR 图像
+     */
+    static BufferedImage create(int megapixels) {
+        int height = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 3 / 4.0));
+        int width = height * 4 / 3;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Random random = new Random(megapixels);
+        for (int y = 0, p = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, p += 3) {
+                int noise = random.nextInt(32) - 16;
+                data[p] = clamp(255 * x / width + noise);
+                data[p + 1] = clamp(255 * y / height + noise);
+                data[p + 2] = clamp(255 - 255 * (x + y) / (width + height) + noise);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 生成带透明通道的图片水印（PNG），中间为不透明的圆形，四周透明
+     */
+    static File createLogo(Path directory) throws IOException {
+        BufferedImage logo = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = logo.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(new Color(30, 90, 200, 160));
+        g2d.fillRoundRect(0, 0, 400, 300, 60, 60);
+        g2d.setColor(Color.WHITE);
+        g2d.fillOval(100, 50, 200, 200);
+        g2d.dispose();
+        File file = directory.resolve("logo.png").toFile();
+        ImageIO.write(logo, "png", file);
+        return file;
+    }
+
+    /**
+     * 把合成图片写成 JPEG 文件
+     */
+    static File writeJpeg(Path directory, int megapixels) throws IOException {
+        File file = directory.resolve("synthetic-" + megapixels + "mp.jpg").toFile();
+        ImageIO.write(create(megapixels), "jpeg", file);
+        return file;
+    }
+
+    /**
+     * 删除基准测试创建的临时目录
+     */
+    static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) Math.max(0, Math.min(255, value));
+    }
+}
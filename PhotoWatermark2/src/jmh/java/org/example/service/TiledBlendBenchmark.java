@@ -0,0 +1,106 @@
+package org.example.service;
+
+import org.example.model.WatermarkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平铺水印铺满整张图片的基准测试：SpriteBlender 直接混合像素数组与 Graphics2D.drawImage 的对比
+ * blend 走导出使用的 drawWatermark(BufferedImage, ...)，drawImage 走 drawWatermark(Graphics2D, ...)，
+ * 两者使用同一份缓存的水印素材。目标图像不透明，混合耗时与其像素取值无关，因此不在两次调用之间恢复
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class TiledBlendBenchmark {
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "4BYTE_ABGR"})
+    private String imageType;
+
+    @Param({"TEXT", "IMAGE"})
+    private String type;
+
+    private Path directory;
+    private BufferedImage target;
+    private WatermarkConfig config;
+    private WatermarkService watermarkService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tiled-blend-bench");
+        BufferedImage source = SyntheticImages.create(megapixels);
+        target = new BufferedImage(source.getWidth(), source.getHeight(), toImageType(imageType));
+        Graphics2D g2d = target.createGraphics();
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+
+        config = new WatermarkConfig();
+        config.setPosition(WatermarkService.TILED);
+        config.setRotation(30);
+        if ("IMAGE".equals(type)) {
+            config.setImageFile(SyntheticImages.createLogo(directory));
+            config.setImageScale(50);
+            config.setImageOpacity(60);
+        } else {
+            config.setText("© PhotoWatermark 基准测试");
+            config.setFontSize(72);
+            config.setColor("#FFFFFF");
+            config.setOpacity(60);
+        }
+        watermarkService = new WatermarkService();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticImages.delete(directory);
+    }
+
+    @Benchmark
+    public BufferedImage blend() {
+        watermarkService.applyWatermark(target, config, 1.0);
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage drawImage() {
+        Graphics2D g2d = target.createGraphics();
+        watermarkService.drawWatermark(g2d, target.getWidth(), target.getHeight(), config, 1.0);
+        g2d.dispose();
+        return target;
+    }
+
+    private static int toImageType(String name) {
+        switch (name) {
+            case "INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case "4BYTE_ABGR":
+                return BufferedImage.TYPE_4BYTE_ABGR;
+            default:
+                throw new IllegalArgumentException("不支持的图像类型: " + name);
+        }
+    }
+}
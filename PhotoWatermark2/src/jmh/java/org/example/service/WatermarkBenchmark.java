@@ -0,0 +1,82 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+import org.example.model.WatermarkConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WatermarkService.addWatermark 的基准测试
+ * 源图在准备阶段解码并进入 ImageCache，测量的是取得完整图像副本并绘制水印的耗时，
+ * 水印素材在预热阶段生成后一直命中 WatermarkAssetCache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class WatermarkBenchmark {
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    @Param({"TEXT", "IMAGE"})
+    private String type;
+
+    @Param({"0", "30"})
+    private double rotation;
+
+    private Path directory;
+    private ImageData imageData;
+    private WatermarkConfig config;
+    private WatermarkService watermarkService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("watermark-bench");
+        imageData = new ImageData(SyntheticImages.writeJpeg(directory, megapixels));
+        ImageCache.getDefault().getFullImage(imageData);
+
+        config = new WatermarkConfig();
+        config.setRotation(rotation);
+        config.setPosition("BOTTOM_RIGHT");
+        if ("IMAGE".equals(type)) {
+            config.setImageFile(SyntheticImages.createLogo(directory));
+            config.setImageScale(100);
+            config.setImageOpacity(60);
+        } else {
+            config.setText("© PhotoWatermark 基准测试");
+            config.setFontSize(72);
+            config.setColor("#FFFFFF");
+            config.setOpacity(60);
+        }
+        watermarkService = new WatermarkService();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ImageCache.getDefault().release(imageData);
+        SyntheticImages.delete(directory);
+    }
+
+    @Benchmark
+    public BufferedImage addWatermark() {
+        return watermarkService.addWatermark(imageData, config);
+    }
+}
@@ -0,0 +1,403 @@
+package org.example;
+
+import org.example.model.WatermarkConfig;
+import org.example.service.BatchExportService;
+import org.example.service.FontService;
+import org.example.service.HotFolderService;
+import org.example.service.MemoryBudget;
+import org.example.service.StageMetrics;
+import org.example.service.TemplateService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * 命令行批处理入口
+ * 以无界面（headless）方式运行，适用于没有显示器的服务器；
+ * 指定 --watch 时作为热文件夹常驻运行，处理陆续放入输入目录的图片，直到进程被终止
+ *
+ * 用法：
+ * java -cp PhotoWatermark2-1.0-SNAPSHOT-shaded.jar org.example.CliMainApp
+ *     -i 输入目录或通配符 [-i ...] -t 模板名称 -o 输出目录 [-w 工作线程数] [-m 内存预算MB]
+ *     [--watch [--settle 毫秒]]
+ */
+public class CliMainApp {
+    private static final String USAGE =
+            "用法: CliMainApp -i <输入目录|文件|通配符> [-i ...] -t <模板名称> -o <输出目录> [-w <工作线程数>]\n" +
+            "  -i, --input     输入目录、图片文件或通配符（例如 photos/*.jpg、photos/**/*.png），可重复指定；\n" +
+            "                  目录只处理顶层的图片，通配符匹配到子文件夹中的图片时，在输出目录中保持相对于\n" +
+            "                  通配符之前那一级目录的子文件夹结构（photos/**/*.jpg 中的 photos/a/1.jpg 输出到 <输出目录>/a/）。\n" +
+            "                  多个输入生成同名输出时，后处理的图片在文件名后加上 _2、_3 ...，不会互相覆盖\n" +
+            "  -t, --template  TemplateService 中保存的模板名称\n" +
+            "  -o, --output    输出目录，不存在时自动创建\n" +
+            "  -w, --workers   工作线程数，默认为CPU核心数\n" +
+            "  -m, --memory    同时解码处理的图片内存预算（MB），默认为最大堆内存的一半\n" +
+            "      --watch     热文件夹模式：持续监视输入目录（只能指定一个），处理新放入的图片，Ctrl+C 结束\n" +
+            "      --settle    热文件夹模式下文件大小保持不变多少毫秒后视为写入完成，默认 " +
+            HotFolderService.DEFAULT_SETTLE_MILLIS + "\n" +
+            "  -h, --help      显示帮助";
+
+    public static void main(String[] args) {
+        // 必须在任何AWT类初始化之前设置，确保不会初始化窗口系统
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+
+    /**
+     * 执行命令行批处理
+     *
+     * @param args 命令行参数
+     * @return 进程退出码：0 成功，1 存在导出失败的图片，2 参数错误
+     */
+    static int run(String[] args) {
+        List<String> inputs = new ArrayList<>();
+        String templateName = null;
+        String output = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        long memoryBudget = MemoryBudget.createDefault().getBudgetBytes();
+        boolean watch = false;
+        long settleMillis = HotFolderService.DEFAULT_SETTLE_MILLIS;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-i":
+                    case "--input":
+                        inputs.add(requireValue(args, ++i));
+                        break;
+                    case "-t":
+                    case "--template":
+                        templateName = requireValue(args, ++i);
+                        break;
+                    case "-o":
+                    case "--output":
+                        output = requireValue(args, ++i);
+                        break;
+                    case "-w":
+                    case "--workers":
+                        workers = Integer.parseInt(requireValue(args, ++i));
+                        break;
+                    case "-m":
+                    case "--memory":
+                        memoryBudget = Long.parseLong(requireValue(args, ++i)) * 1024 * 1024;
+                        break;
+                    case "--watch":
+                        watch = true;
+                        break;
+                    case "--settle":
+                        settleMillis = Long.parseLong(requireValue(args, ++i));
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return 0;
+                    default:
+                        throw new IllegalArgumentException("未知参数: " + args[i]);
+                }
+            }
+            if (inputs.isEmpty() || templateName == null || output == null) {
+                throw new IllegalArgumentException("必须指定输入、模板和输出目录");
+            }
+            if (workers <= 0) {
+                throw new IllegalArgumentException("工作线程数必须大于0: " + workers);
+            }
+            if (watch && (inputs.size() != 1 || !Files.isDirectory(Paths.get(inputs.get(0))))) {
+                throw new IllegalArgumentException("热文件夹模式必须指定一个输入目录");
+            }
+            if (watch && Paths.get(inputs.get(0)).toAbsolutePath().normalize()
+                    .equals(Paths.get(output).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("热文件夹模式的输出目录不能与输入目录相同");
+            }
+            if (memoryBudget <= 0) {
+                throw new IllegalArgumentException("内存预算必须大于0: " + memoryBudget);
+            }
+            if (settleMillis < 0) {
+                throw new IllegalArgumentException("稳定等待时间不能为负数: " + settleMillis);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        // 在后台枚举系统字体，与读取模板并行
+        FontService.preload();
+
+        TemplateService templateService = new TemplateService();
+        WatermarkConfig config = templateService.loadTemplate(templateName);
+        if (config == null) {
+            System.err.println("找不到模板: " + templateName);
+            return 2;
+        }
+
+        File outputFolder = new File(output);
+        try {
+            Files.createDirectories(outputFolder.toPath());
+        } catch (IOException e) {
+            System.err.println("无法创建输出目录: " + e.getMessage());
+            return 2;
+        }
+
+        BatchExportService exportService = new BatchExportService(workers, workers * 4, memoryBudget);
+        if (watch) {
+            return watch(exportService, new File(inputs.get(0)), settleMillis, config, outputFolder);
+        }
+        BatchExportService.ExportResult result;
+        try {
+            result = exportService.export(new InputFiles(inputs), config, outputFolder,
+                    source -> InputFiles.outputFolderOf(source, outputFolder), new StageMetrics());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("导出被中断");
+            return 1;
+        } catch (UncheckedIOException e) {
+            System.err.println("读取输入失败: " + e.getCause().getMessage());
+            return 1;
+        }
+
+        System.out.println("工作线程 " + workers + " 个，" + result);
+        System.out.println("各阶段耗时: " + result.getMetrics().toStatusText());
+        System.out.println("流水线队列: " + result.getQueueStatusText());
+        System.out.println("内存预算: " + result.getMemoryBudget());
+        return result.getFailed() == 0 ? 0 : 1;
+    }
+
+    /**
+     * 热文件夹模式：监视输入目录直到进程被终止（Ctrl+C 或 SIGTERM）
+     * 终止时停止监视，等待已提交的图片导出完成并写入运行报告后再退出
+     */
+    private static int watch(BatchExportService exportService, File inputFolder, long settleMillis,
+                             WatermarkConfig config, File outputFolder) {
+        HotFolderService hotFolder;
+        try {
+            hotFolder = new HotFolderService(inputFolder, settleMillis,
+                    batch -> System.out.println("热文件夹: 新到达 " + batch.size() + " 张图片"));
+        } catch (IOException e) {
+            System.err.println("无法监视输入目录: " + e.getMessage());
+            return 2;
+        }
+
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                hotFolder.close();
+                finished.await();
+            } catch (IOException | InterruptedException e) {
+                // 退出过程中忽略
+            }
+        }, "hot-folder-shutdown"));
+
+        System.out.println("正在监视 " + inputFolder + "，按 Ctrl+C 结束");
+        hotFolder.start();
+        try {
+            BatchExportService.ExportResult result = exportService.export(hotFolder, config, outputFolder);
+            System.out.println("热文件夹已停止，" + result);
+            System.out.println("各阶段耗时: " + result.getMetrics().toStatusText());
+            System.out.println("流水线队列: " + result.getQueueStatusText());
+            System.out.println("内存预算: " + result.getMemoryBudget());
+            return result.getFailed() == 0 ? 0 : 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("导出被中断");
+            return 1;
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("参数缺少取值: " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * 检查文件是否为图片文件
+     */
+    private static boolean isImageFile(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        String fileName = path.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ||
+                fileName.endsWith(".png") || fileName.endsWith(".bmp") ||
+                fileName.endsWith(".tiff") || fileName.endsWith(".tif");
+    }
+
+    /**
+     * 惰性遍历全部输入的图片文件
+     * 每个输入参数在轮到它时才打开对应的目录流，不会在内存中构建完整的文件列表
+     */
+    private static class InputFiles implements Iterable<File> {
+        private final List<String> inputs;
+
+        InputFiles(List<String> inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        public Iterator<File> iterator() {
+            return new Iterator<>() {
+                private final Iterator<String> inputIterator = inputs.iterator();
+                private Stream<Path> currentStream;
+                private Iterator<Path> current;
+                // 当前输入为通配符时的遍历起点，其它输入为null
+                private Path currentBase;
+                private File next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null) {
+                        if (current != null && current.hasNext()) {
+                            Path path = current.next();
+                            if (isImageFile(path)) {
+                                next = currentBase != null ? new GlobMatch(path, currentBase) : path.toFile();
+                            }
+                        } else if (inputIterator.hasNext()) {
+                            closeCurrent();
+                            String input = inputIterator.next();
+                            currentBase = globBase(input);
+                            currentStream = currentBase != null ? openGlob(input, currentBase) : open(input);
+                            current = currentStream.iterator();
+                        } else {
+                            closeCurrent();
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public File next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    File result = next;
+                    next = null;
+                    return result;
+                }
+
+                private void closeCurrent() {
+                    if (currentStream != null) {
+                        currentStream.close();
+                        currentStream = null;
+                        current = null;
+                    }
+                }
+            };
+        }
+
+        /**
+         * 源图片的输出文件夹：通配符匹配到的子文件夹中的图片保持相对于遍历起点的子文件夹，其余直接放在输出目录中
+         */
+        static File outputFolderOf(File source, File outputFolder) {
+            if (source instanceof GlobMatch) {
+                Path relative = ((GlobMatch) source).base.toPath().relativize(source.toPath()).getParent();
+                if (relative != null) {
+                    return new File(outputFolder, relative.toString());
+                }
+            }
+            return outputFolder;
+        }
+
+        /**
+         * 打开单个输入：目录列出其顶层文件，普通文件直接返回
+         */
+        private static Stream<Path> open(String input) {
+            try {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    return Files.list(path);
+                }
+                if (Files.isRegularFile(path)) {
+                    return Stream.of(path);
+                }
+            } catch (java.nio.file.InvalidPathException e) {
+                // 不是合法路径，按不存在处理
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            System.err.println("输入不存在: " + input);
+            return Stream.empty();
+        }
+
+        /**
+         * 判断输入是否按通配符处理：不是已存在的目录或文件且包含通配符
+         *
+         * @return 通配符之前的最后一级目录（遍历起点），不是通配符时返回null
+         */
+        private static Path globBase(String input) {
+            try {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path) || Files.isRegularFile(path)) {
+                    return null;
+                }
+            } catch (java.nio.file.InvalidPathException e) {
+                // Windows 下通配符字符不是合法路径，按通配符处理
+            }
+            String normalized = input.replace('\\', '/');
+            int firstWildcard = indexOfWildcard(normalized);
+            if (firstWildcard < 0) {
+                return null;
+            }
+            int baseEnd = normalized.lastIndexOf('/', firstWildcard);
+            return baseEnd < 0 ? Paths.get(".") : Paths.get(baseEnd == 0 ? "/" : normalized.substring(0, baseEnd));
+        }
+
+        private static Stream<Path> openGlob(String glob, Path base) {
+            String normalized = glob.replace('\\', '/');
+            int baseEnd = normalized.lastIndexOf('/', indexOfWildcard(normalized));
+            String pattern = normalized.substring(baseEnd + 1);
+            if (!Files.isDirectory(base)) {
+                System.err.println("输入目录不存在: " + base);
+                return Stream.empty();
+            }
+
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+            try {
+                return Files.walk(base, maxDepth)
+                        .filter(path -> matcher.matches(base.relativize(path)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * 通配符匹配到的文件，记住遍历起点以便在输出目录中保持子文件夹结构
+         */
+        private static class GlobMatch extends File {
+            private static final long serialVersionUID = 1L;
+
+            private final File base;
+
+            GlobMatch(Path path, Path base) {
+                super(path.toString());
+                this.base = base.toFile();
+            }
+        }
+
+        private static int indexOfWildcard(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '*' || c == '?' || c == '[' || c == '{') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
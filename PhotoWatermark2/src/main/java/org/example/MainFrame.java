@@ -2,7 +2,12 @@ package org.example;
 
 import org.example.model.ImageData;
 import org.example.model.WatermarkConfig;
+import org.example.service.BatchExportService;
+import org.example.service.ImageCache;
+import org.example.service.ImageImportService;
+import org.example.service.PreviewScheduler;
 import org.example.service.PreviewService;
+import org.example.service.StageMetrics;
 import org.example.service.WatermarkService;
 import org.example.service.TemplateService;
 
@@ -20,10 +25,13 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.TooManyListenersException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 主窗口类
@@ -48,6 +56,7 @@ public class MainFrame extends JFrame {
     private JSlider imageOpacitySlider;
     private JLabel imageOpacityLabel;
     private JComboBox<String> positionComboBox;
+    private JSpinner tileSpacingSpinner;
     private JSlider rotationSlider;
     private JLabel rotationLabel;
     private JRadioButton textWatermarkRadio;
@@ -56,6 +65,7 @@ public class MainFrame extends JFrame {
     private JComboBox<String> exportFormatComboBox;
     private JSlider jpegQualitySlider;
     private JLabel jpegQualityLabel;
+    private JCheckBox progressiveJpegCheckBox;
     private JComboBox<String> namingConventionComboBox;
     private JTextField prefixTextField;
     private JTextField suffixTextField;
@@ -72,17 +82,31 @@ public class MainFrame extends JFrame {
     private JTextField heightField;
     private JSlider percentageSlider;
     private JLabel percentageLabel;
+    private JComboBox<String> resizeFilterComboBox;
     
     // 模板管理组件
     private JButton saveTemplateButton;
     private JButton loadTemplateButton;
     private JButton manageTemplatesButton;
 
+    // 状态栏：导出时实时显示吞吐量和各阶段耗时
+    private JLabel statusLabel;
+    private transient Timer statusTimer;
+    // 本次导出专用的统计，与记录预览的默认实例分开
+    private transient volatile StageMetrics exportMetrics;
+    // 正在导出时为导出开始时的统计快照，否则为null
+    private transient volatile StageMetrics.Snapshot exportStartSnapshot;
+    private String lastExportStatus = "就绪";
+    // 导入的进度或结果，没有导入过时为null
+    private String importStatus;
+
     // 数据
     private WatermarkConfig config;
     private WatermarkService watermarkService;
     private PreviewService previewService; // 新增预览服务
+    private transient PreviewScheduler previewScheduler; // 后台预览调度
     private TemplateService templateService; // 模板服务
+    private final transient ImageImportService importService = new ImageImportService(); // 后台递归导入
     private File outputFolder;
 
     public MainFrame() {
@@ -91,6 +115,7 @@ public class MainFrame extends JFrame {
         previewService = new PreviewService(); // 初始化预览服务
         templateService = new TemplateService(); // 初始化模板服务
         initializeComponents();
+        previewScheduler = new PreviewScheduler(previewService, previewLabel);
         setupLayout();
         setupEventHandlers();
         setupDragAndDrop();
@@ -109,6 +134,10 @@ public class MainFrame extends JFrame {
         listModel = new DefaultListModel<>();
         imageList = new JList<>(listModel);
         imageList.setCellRenderer(new ImageListCellRenderer());
+        // 固定单元格尺寸，列表变化时不必逐个渲染全部单元格来计算布局（数万张图片时尤其重要）
+        imageList.setPrototypeCellValue(new ImageData(
+                new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB),
+                "IMG_00000000_000000.jpg"));
         imageList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         // 预览标签
@@ -157,10 +186,14 @@ public class MainFrame extends JFrame {
         // 位置组合框
         String[] positions = {"TOP_LEFT", "TOP_CENTER", "TOP_RIGHT",
                 "CENTER_LEFT", "CENTER", "CENTER_RIGHT",
-                "BOTTOM_LEFT", "BOTTOM_CENTER", "BOTTOM_RIGHT"};
+                "BOTTOM_LEFT", "BOTTOM_CENTER", "BOTTOM_RIGHT", WatermarkService.TILED};
         positionComboBox = new JComboBox<>(positions);
         positionComboBox.setSelectedItem("CENTER");
 
+        // 平铺间距（只在平铺模式下可用）
+        tileSpacingSpinner = new JSpinner(new SpinnerNumberModel(80, 0, 2000, 10));
+        tileSpacingSpinner.setEnabled(false);
+
         // 旋转滑块
         rotationSlider = new JSlider(-180, 180, 0);
         rotationLabel = new JLabel("0°");
@@ -180,6 +213,7 @@ public class MainFrame extends JFrame {
         // JPEG质量滑块
         jpegQualitySlider = new JSlider(0, 100, 90);
         jpegQualityLabel = new JLabel("90");
+        progressiveJpegCheckBox = new JCheckBox("渐进式JPEG");
 
         // 命名规则组合框
         String[] namingConventions = {"ORIGINAL", "PREFIX", "SUFFIX"};
@@ -194,6 +228,11 @@ public class MainFrame extends JFrame {
         exportButton = new JButton("导出图片");
         exportButton.setEnabled(false);
 
+        // 状态栏，每秒刷新一次
+        statusLabel = new JLabel(lastExportStatus);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        statusTimer = new Timer(1000, e -> updateStatusBar());
+
         // 选择输出文件夹按钮和标签
         selectOutputFolderButton = new JButton("选择输出文件夹");
         outputFolderLabel = new JLabel("未选择输出文件夹");
@@ -209,6 +248,9 @@ public class MainFrame extends JFrame {
         heightField = new JTextField("600");
         percentageSlider = new JSlider(1, 200, 100);
         percentageLabel = new JLabel("100%");
+        String[] resizeFilters = {"LANCZOS3", "BICUBIC", "PROGRESSIVE_BILINEAR"};
+        resizeFilterComboBox = new JComboBox<>(resizeFilters);
+        resizeFilterComboBox.setSelectedItem("LANCZOS3");
         
         // 模板管理组件
         saveTemplateButton = new JButton("保存模板");
@@ -305,6 +347,8 @@ public class MainFrame extends JFrame {
         mainPanel.add(rightPanel, BorderLayout.CENTER);
 
         add(mainPanel);
+        add(statusLabel, BorderLayout.SOUTH);
+        statusTimer.start();
 
         // 设置事件监听器
         importImagesButton.addActionListener(e -> handleImportImagesAction());
@@ -489,6 +533,17 @@ public class MainFrame extends JFrame {
         gbc.weightx = 0;
         panel.add(rotationLabel, gbc);
 
+        // 平铺间距标签和输入框
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0;
+        panel.add(new JLabel("平铺间距:"), gbc);
+        gbc.gridx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.weightx = 1.0;
+        panel.add(tileSpacingSpinner, gbc);
+
         return panel;
     }
 
@@ -525,9 +580,14 @@ public class MainFrame extends JFrame {
         gbc.weightx = 0;
         panel.add(jpegQualityLabel, gbc);
 
+        // 渐进式JPEG复选框
+        gbc.gridx = 1;
+        gbc.gridy = 2;
+        panel.add(progressiveJpegCheckBox, gbc);
+
         // 命名规则标签和组合框
         gbc.gridx = 0;
-        gbc.gridy = 2;
+        gbc.gridy = 3;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("命名规则:"), gbc);
@@ -538,7 +598,7 @@ public class MainFrame extends JFrame {
 
         // 前缀标签和文本框
         gbc.gridx = 0;
-        gbc.gridy = 3;
+        gbc.gridy = 4;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("前缀:"), gbc);
@@ -549,7 +609,7 @@ public class MainFrame extends JFrame {
 
         // 后缀标签和文本框
         gbc.gridx = 0;
-        gbc.gridy = 4;
+        gbc.gridy = 5;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("后缀:"), gbc);
@@ -560,7 +620,7 @@ public class MainFrame extends JFrame {
         
         // 尺寸调整复选框
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(resizeCheckBox, gbc);
@@ -570,13 +630,13 @@ public class MainFrame extends JFrame {
         resizeRadioPanel.add(widthHeightRadio);
         resizeRadioPanel.add(percentageRadio);
         gbc.gridx = 1;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         panel.add(resizeRadioPanel, gbc);
         
         // 宽度标签和文本框
         gbc.gridx = 0;
-        gbc.gridy = 6;
+        gbc.gridy = 7;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("宽度:"), gbc);
@@ -587,7 +647,7 @@ public class MainFrame extends JFrame {
         
         // 高度标签和文本框
         gbc.gridx = 0;
-        gbc.gridy = 7;
+        gbc.gridy = 8;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("高度:"), gbc);
@@ -598,7 +658,7 @@ public class MainFrame extends JFrame {
         
         // 按比例调整标签、滑块和值标签
         gbc.gridx = 0;
-        gbc.gridy = 8;
+        gbc.gridy = 9;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(new JLabel("比例:"), gbc);
@@ -611,9 +671,20 @@ public class MainFrame extends JFrame {
         gbc.weightx = 0;
         panel.add(percentageLabel, gbc);
 
+        // 缩放算法标签和组合框
+        gbc.gridx = 0;
+        gbc.gridy = 10;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0;
+        panel.add(new JLabel("缩放算法:"), gbc);
+        gbc.gridx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.weightx = 1.0;
+        panel.add(resizeFilterComboBox, gbc);
+
         // 输出文件夹选择按钮和标签
         gbc.gridx = 0;
-        gbc.gridy = 9;
+        gbc.gridy = 11;
         gbc.fill = GridBagConstraints.NONE;
         gbc.weightx = 0;
         panel.add(selectOutputFolderButton, gbc);
@@ -624,7 +695,7 @@ public class MainFrame extends JFrame {
 
         // 导出按钮
         gbc.gridx = 0;
-        gbc.gridy = 10;
+        gbc.gridy = 12;
         gbc.gridwidth = 3;
         gbc.fill = GridBagConstraints.NONE;
         gbc.anchor = GridBagConstraints.CENTER;
@@ -657,6 +728,7 @@ public class MainFrame extends JFrame {
             boolean isJpeg = "JPEG".equals(exportFormatComboBox.getSelectedItem());
             jpegQualitySlider.setEnabled(isJpeg);
             jpegQualityLabel.setEnabled(isJpeg);
+            progressiveJpegCheckBox.setEnabled(isJpeg);
         });
 
         // 命名规则切换事件
@@ -711,7 +783,11 @@ public class MainFrame extends JFrame {
         boldCheckBox.addActionListener(e -> updatePreview());
         italicCheckBox.addActionListener(e -> updatePreview());
         colorButton.addActionListener(e -> updatePreview());
-        positionComboBox.addActionListener(e -> updatePreview());
+        positionComboBox.addActionListener(e -> {
+            tileSpacingSpinner.setEnabled(WatermarkService.TILED.equals(positionComboBox.getSelectedItem()));
+            updatePreview();
+        });
+        tileSpacingSpinner.addChangeListener(e -> updatePreview());
         
         // 尺寸调整相关事件
         resizeCheckBox.addActionListener(e -> updateResizeControls());
@@ -783,49 +859,42 @@ public class MainFrame extends JFrame {
 
     /**
      * 导入文件
+     * 在后台线程中递归遍历文件夹并只读取文件头，识别出的图片分批加入列表，界面不会被阻塞
      */
     private void importFiles(List<File> files) {
-        for (File file : files) {
-            if (file.isDirectory()) {
-                // 如果是目录，则递归导入其中的图片文件
-                File[] imageFiles = file.listFiles(this::isImageFile);
-                if (imageFiles != null) {
-                    for (File imageFile : imageFiles) {
-                        addImageToList(imageFile);
-                    }
-                }
-            } else if (isImageFile(file)) {
-                // 如果是图片文件，则添加到列表
-                addImageToList(file);
+        long startNanos = System.nanoTime();
+        importStatus = "导入中…";
+        updateStatusBar();
+        SwingWorker<Integer, ImageData> worker = new SwingWorker<Integer, ImageData>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return importService.importFiles(files, batch -> publish(batch.toArray(new ImageData[0])));
             }
-        }
-    }
 
-    /**
-     * 检查文件是否为图片文件
-     */
-    private boolean isImageFile(File file) {
-        if (file == null || !file.isFile()) {
-            return false;
-        }
-        String fileName = file.getName().toLowerCase();
-        return fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ||
-                fileName.endsWith(".png") || fileName.endsWith(".bmp") ||
-                fileName.endsWith(".tiff") || fileName.endsWith(".tif");
-    }
+            @Override
+            protected void process(List<ImageData> chunks) {
+                listModel.addAll(chunks);
+                // 没有选中任何图片时选中第一张，并在预览区显示
+                if (imageList.getSelectedValue() == null && !listModel.isEmpty()) {
+                    imageList.setSelectedIndex(0);
+                }
+                importStatus = "导入中：列表共 " + listModel.getSize() + " 张";
+                updateStatusBar();
+            }
 
-    /**
-     * 添加图片到列表
-     */
-    private void addImageToList(File file) {
-        ImageData imageData = new ImageData(file);
-        listModel.addElement(imageData);
-
-        // 如果是第一张图片，自动选中并在预览区显示
-        if (listModel.getSize() == 1) {
-            imageList.setSelectedIndex(0);
-            updatePreview(); // 使用新的预览更新方法
-        }
+            @Override
+            protected void done() {
+                try {
+                    importStatus = String.format("导入 %d 张图片，用时 %.1f s", get(),
+                            (System.nanoTime() - startNanos) / 1e9);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    importStatus = "导入失败";
+                }
+                updateStatusBar();
+            }
+        };
+        worker.execute();
     }
 
     // UI事件处理方法
@@ -922,24 +991,60 @@ public class MainFrame extends JFrame {
 
         // 禁用导出按钮防止重复点击
         exportButton.setEnabled(false);
+        exportMetrics = new StageMetrics();
+        exportStartSnapshot = exportMetrics.snapshot();
+        updateStatusBar();
 
         // 在后台线程执行导出操作
-        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+        SwingWorker<BatchExportService.ExportResult, Void> worker = new SwingWorker<BatchExportService.ExportResult, Void>() {
             @Override
-            protected Void doInBackground() throws Exception {
-                exportImages();
-                return null;
+            protected BatchExportService.ExportResult doInBackground() throws Exception {
+                return exportImages();
             }
 
             @Override
             protected void done() {
                 exportButton.setEnabled(true);
-                JOptionPane.showMessageDialog(MainFrame.this, "导出完成！", "提示", JOptionPane.INFORMATION_MESSAGE);
+                exportStartSnapshot = null;
+                String message = "导出完成！";
+                try {
+                    BatchExportService.ExportResult result = get();
+                    message = "导出完成！\n" + result + "\n" + result.getQueueStatusText()
+                            + "\n内存预算：" + result.getMemoryBudget();
+                    lastExportStatus = "上次导出：" + result.getMetrics().toStatusText();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                updateStatusBar();
+                JOptionPane.showMessageDialog(MainFrame.this, message, "提示", JOptionPane.INFORMATION_MESSAGE);
             }
         };
         worker.execute();
     }
 
+    /**
+     * 刷新状态栏：导出期间显示本次导出至今的统计，否则显示上次导出的结果；附加导入进度，有预览记录时附加预览耗时
+     */
+    private void updateStatusBar() {
+        StageMetrics.Snapshot current = StageMetrics.getDefault().snapshot();
+        StageMetrics.Snapshot start = exportStartSnapshot;
+        StringBuilder text = new StringBuilder();
+        if (start != null) {
+            text.append("导出中：").append(exportMetrics.snapshot().minus(start).toStatusText());
+        } else {
+            text.append(lastExportStatus);
+        }
+        if (importStatus != null) {
+            text.append(" | ").append(importStatus);
+        }
+        if (current.getCount(StageMetrics.Stage.PREVIEW) > 0) {
+            text.append(String.format(" | 预览 p50 %.0f ms / p99 %.0f ms",
+                    current.getPercentileNanos(StageMetrics.Stage.PREVIEW, 50) / 1e6,
+                    current.getPercentileNanos(StageMetrics.Stage.PREVIEW, 99) / 1e6));
+        }
+        statusLabel.setText(text.toString());
+    }
+
     /**
      * 删除选中的图片
      */
@@ -953,11 +1058,11 @@ public class MainFrame extends JFrame {
             if (option == JOptionPane.YES_OPTION) {
                 int selectedIndex = imageList.getSelectedIndex();
                 listModel.removeElement(selectedImage);
+                ImageCache.getDefault().release(selectedImage);
                 
                 // 如果删除的是最后一张图片，清空预览
                 if (listModel.isEmpty()) {
-                    previewLabel.setIcon(null);
-                    previewLabel.setText("");
+                    previewScheduler.clear();
                 } else {
                     // 选中下一张图片或者上一张图片
                     if (selectedIndex < listModel.size()) {
@@ -986,8 +1091,10 @@ public class MainFrame extends JFrame {
         config.setImageOpacity(imageOpacitySlider.getValue());
         config.setPosition((String) positionComboBox.getSelectedItem());
         config.setRotation(rotationSlider.getValue());
+        config.setTileSpacing((Integer) tileSpacingSpinner.getValue());
         config.setExportFormat((String) exportFormatComboBox.getSelectedItem());
         config.setJpegQuality(jpegQualitySlider.getValue());
+        config.setProgressiveJpeg(progressiveJpegCheckBox.isSelected());
         config.setNamingConvention((String) namingConventionComboBox.getSelectedItem());
         config.setPrefix(prefixTextField.getText());
         config.setSuffix(suffixTextField.getText());
@@ -1008,75 +1115,40 @@ public class MainFrame extends JFrame {
         } else {
             config.setResizePercentage(percentageSlider.getValue());
         }
+        config.setResizeFilter((String) resizeFilterComboBox.getSelectedItem());
     }
 
     /**
      * 更新预览显示
-     * 此方法确保预览始终基于原始图像生成，避免出现多个水印的情况
+     * 此方法确保预览始终基于原始图像生成，避免出现多个水印的情况。
+     * 渲染在后台线程进行，连续的多次调用只有最后一次的结果会显示
      */
     private void updatePreview() {
         ImageData selectedImage = imageList.getSelectedValue();
         if (selectedImage != null) {
             // 更新配置
             updateConfigFromUI();
-            
-            // 重新创建 ImageData 对象以确保使用原始图像
-            // 这样可以确保每次预览都是在原始图像上添加水印，而不是在已有水印的图像上再次添加
-            ImageData freshImageData = new ImageData(selectedImage.getFile());
-            
-            // 清除之前的预览内容，确保只显示当前位置的水印
-            previewLabel.setIcon(null);
-            previewLabel.setText("");
-            
-            // 使用预览服务更新预览
+
             // 注意：PreviewService 始终基于原始图像生成预览，确保只有一个水印显示在新位置
-            previewService.updatePreview(previewLabel, freshImageData, config);
+            // ImageCache.getFullImage 每次都返回缓存原图的副本，无需重新从磁盘解码
+            previewScheduler.schedule(selectedImage, config);
         }
     }
 
     /**
      * 导出所有图片
+     * 由 BatchExportService 使用工作线程池并行处理
      */
-    private void exportImages() throws IOException {
+    private BatchExportService.ExportResult exportImages() throws InterruptedException {
         updateConfigFromUI();
 
-        String format = config.getExportFormat();
-        int jpegQuality = (int) config.getJpegQuality();
-        String namingConvention = config.getNamingConvention();
-        String prefix = config.getPrefix();
-        String suffix = config.getSuffix();
-
+        List<File> sources = new ArrayList<>();
         for (int i = 0; i < listModel.getSize(); i++) {
-            ImageData imageData = listModel.getElementAt(i);
-
-            // 生成输出文件名
-            String originalName = imageData.getFile().getName();
-            String nameWithoutExtension = originalName.substring(0, originalName.lastIndexOf('.'));
-            String extension = format.toLowerCase();
-
-            String outputName;
-            switch (namingConvention) {
-                case "PREFIX":
-                    outputName = prefix + nameWithoutExtension + "." + extension;
-                    break;
-                case "SUFFIX":
-                    outputName = nameWithoutExtension + suffix + "." + extension;
-                    break;
-                default: // ORIGINAL
-                    outputName = nameWithoutExtension + "." + extension;
-                    break;
-            }
-
-            File outputFile = new File(outputFolder, outputName);
-
-            // 添加水印并保存图片
-            // 重新加载原始图像以避免重复添加水印
-            ImageData freshImageData = new ImageData(imageData.getFile());
-            BufferedImage watermarkedImage = watermarkService.addWatermark(freshImageData, config);
-            if (watermarkedImage != null) {
-                watermarkService.saveImage(watermarkedImage, outputFile, format, jpegQuality);
-            }
+            sources.add(listModel.getElementAt(i).getFile());
         }
+
+        BatchExportService exportService = new BatchExportService(Runtime.getRuntime().availableProcessors());
+        return exportService.export(sources, config, outputFolder, exportMetrics);
     }
 
     /**
@@ -1119,10 +1191,6 @@ public class MainFrame extends JFrame {
                             dtde.acceptDrop(DnDConstants.ACTION_COPY);
                             List<File> files = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
                             importFiles(files);
-                            // 如果导入了文件且没有选中任何图片，则选中第一张图片
-                            if (imageList.getSelectedValue() == null && listModel.getSize() > 0) {
-                                imageList.setSelectedIndex(0);
-                            }
                             dtde.dropComplete(true);
                         } else {
                             dtde.rejectDrop();
@@ -1173,10 +1241,6 @@ public class MainFrame extends JFrame {
                             dtde.acceptDrop(DnDConstants.ACTION_COPY);
                             List<File> files = (List<File>) transferable.getTransferData(DataFlavor.javaFileListFlavor);
                             importFiles(files);
-                            // 如果导入了文件且没有选中任何图片，则选中第一张图片
-                            if (imageList.getSelectedValue() == null && listModel.getSize() > 0) {
-                                imageList.setSelectedIndex(0);
-                            }
                             dtde.dropComplete(true);
                         } else {
                             dtde.rejectDrop();
@@ -1201,6 +1265,7 @@ public class MainFrame extends JFrame {
         heightField.setEnabled(resizeEnabled && widthHeightRadio.isSelected());
         percentageSlider.setEnabled(resizeEnabled && percentageRadio.isSelected());
         percentageLabel.setEnabled(resizeEnabled && percentageRadio.isSelected());
+        resizeFilterComboBox.setEnabled(resizeEnabled);
     }
     
     /**
@@ -1392,11 +1457,13 @@ public class MainFrame extends JFrame {
         positionComboBox.setSelectedItem(config.getPosition());
         rotationSlider.setValue((int) config.getRotation());
         rotationLabel.setText((int) config.getRotation() + "°");
+        tileSpacingSpinner.setValue((int) config.getTileSpacing());
         
         // 导出设置
         exportFormatComboBox.setSelectedItem(config.getExportFormat());
         jpegQualitySlider.setValue((int) config.getJpegQuality());
         jpegQualityLabel.setText(String.valueOf((int) config.getJpegQuality()));
+        progressiveJpegCheckBox.setSelected(config.isProgressiveJpeg());
         namingConventionComboBox.setSelectedItem(config.getNamingConvention());
         prefixTextField.setText(config.getPrefix());
         suffixTextField.setText(config.getSuffix());
@@ -1411,6 +1478,7 @@ public class MainFrame extends JFrame {
         }
         percentageSlider.setValue((int) config.getResizePercentage());
         percentageLabel.setText((int) config.getResizePercentage() + "%");
+        resizeFilterComboBox.setSelectedItem(config.getResizeFilter());
         
         // 更新尺寸调整控件状态
         updateResizeControls();
@@ -1459,10 +1527,25 @@ public class MainFrame extends JFrame {
 
     /**
      * 图片列表单元格渲染器
+     * 缩略图在后台线程中生成，生成前显示空白，生成后重绘列表；
+     * 只为当前可见（及附近）的单元格生成，快速滚动经过的图片不会占用后台线程
      */
     private static class ImageListCellRenderer extends JPanel implements ListCellRenderer<ImageData> {
+        // 可见范围之外仍然预先生成的单元格数
+        private static final int PREFETCH_CELLS = 20;
+
         private final JLabel imageLabel = new JLabel();
         private final JLabel nameLabel = new JLabel();
+        private final transient ExecutorService thumbnailExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 已提交生成的图片；生成失败的保留在其中，不再重试
+        private final transient Set<ImageData> requested = ConcurrentHashMap.newKeySet();
+        // 最近一次绘制时的可见范围，由后台线程读取
+        private volatile int firstVisible;
+        private volatile int lastVisible;
 
         public ImageListCellRenderer() {
             setLayout(new BorderLayout());
@@ -1478,11 +1561,19 @@ public class MainFrame extends JFrame {
                                                       int index,
                                                       boolean isSelected,
                                                       boolean cellHasFocus) {
+            imageLabel.setIcon(null);
             if (value != null) {
-                if (value.getImage() != null) {
-                    ImageIcon icon = new ImageIcon(value.getImage());
-                    Image img = icon.getImage().getScaledInstance(50, 50, Image.SCALE_SMOOTH);
+                Image thumbnail = value.getLoadedImage();
+                if (thumbnail != null) {
+                    // 按原图宽高比缩放到50x50以内
+                    int thumbWidth = thumbnail.getWidth(null);
+                    int thumbHeight = thumbnail.getHeight(null);
+                    double scale = Math.min(50.0 / thumbWidth, 50.0 / thumbHeight);
+                    Image img = thumbnail.getScaledInstance(Math.max(1, (int) (thumbWidth * scale)),
+                            Math.max(1, (int) (thumbHeight * scale)), Image.SCALE_SMOOTH);
                     imageLabel.setIcon(new ImageIcon(img));
+                } else if (index >= 0) {
+                    requestThumbnail(list, value, index);
                 }
                 nameLabel.setText(value.getName());
             }
@@ -1497,5 +1588,26 @@ public class MainFrame extends JFrame {
 
             return this;
         }
+
+        /**
+         * 提交后台生成缩略图，执行时已经滚出可见范围的请求被放弃，再次绘制时重新提交
+         */
+        private void requestThumbnail(JList<? extends ImageData> list, ImageData value, int index) {
+            firstVisible = list.getFirstVisibleIndex();
+            lastVisible = list.getLastVisibleIndex();
+            if (!requested.add(value)) {
+                return;
+            }
+            thumbnailExecutor.execute(() -> {
+                if (index < firstVisible - PREFETCH_CELLS || index > lastVisible + PREFETCH_CELLS) {
+                    requested.remove(value);
+                    return;
+                }
+                if (value.getImage() != null) {
+                    requested.remove(value);
+                    SwingUtilities.invokeLater(list::repaint);
+                }
+            });
+        }
     }
-}
\ No newline at end of file
+}
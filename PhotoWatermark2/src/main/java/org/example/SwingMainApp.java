@@ -1,5 +1,7 @@
 package org.example;
 
+import org.example.service.FontService;
+
 import javax.swing.*;
 
 /**
@@ -7,6 +9,15 @@ import javax.swing.*;
  */
 public class SwingMainApp {
     public static void main(String[] args) {
+        // 带参数启动时进入命令行批处理模式，不创建任何窗口
+        if (args.length > 0) {
+            CliMainApp.main(args);
+            return;
+        }
+
+        // 在后台提前枚举系统字体，避免首次预览时等待
+        FontService.preload();
+
         // 设置系统外观
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
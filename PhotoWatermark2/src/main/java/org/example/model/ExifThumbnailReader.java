@@ -0,0 +1,146 @@
+package org.example.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * EXIF缩略图读取类
+ * ImageIO自带的JPEG解码器只支持JFIF缩略图，相机照片的缩略图通常保存在EXIF（APP1段）的IFD1中，
+ * 这里只解析文件头部的APP1段，直接取出其中内嵌的JPEG缩略图字节，无需解码整张图片
+ */
+class ExifThumbnailReader {
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final int TAG_COMPRESSION = 0x0103;
+    private static final int TAG_JPEG_OFFSET = 0x0201;
+    private static final int TAG_JPEG_LENGTH = 0x0202;
+    private static final int COMPRESSION_JPEG = 6;
+
+    private ExifThumbnailReader() {
+    }
+
+    /**
+     * 读取JPEG文件中EXIF内嵌的缩略图
+     *
+     * @param file JPEG文件
+     * @return 缩略图的JPEG字节，没有EXIF缩略图时返回null
+     */
+    static byte[] read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            while (true) {
+                int prefix = in.readUnsignedByte();
+                if (prefix != 0xFF) {
+                    return null;
+                }
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) { // 填充字节
+                    marker = in.readUnsignedByte();
+                }
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return null;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    byte[] thumbnail = extractThumbnail(segment);
+                    if (thumbnail != null) {
+                        return thumbnail;
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从APP1段中提取IFD1指向的JPEG缩略图
+     */
+    private static byte[] extractThumbnail(byte[] segment) {
+        // "Exif\0\0" 之后是TIFF结构
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+                || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return null;
+        }
+        int tiff = 6;
+        boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+
+        try {
+            long ifd0 = readInt(segment, tiff + 4, littleEndian);
+            int ifd0Entries = readShort(segment, tiff + (int) ifd0, littleEndian);
+            long ifd1 = readInt(segment, tiff + (int) ifd0 + 2 + ifd0Entries * 12, littleEndian);
+            if (ifd1 == 0) {
+                return null;
+            }
+
+            int ifd1Start = tiff + (int) ifd1;
+            int entries = readShort(segment, ifd1Start, littleEndian);
+            long offset = -1;
+            long length = -1;
+            int compression = COMPRESSION_JPEG;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd1Start + 2 + i * 12;
+                int tag = readShort(segment, entry, littleEndian);
+                int type = readShort(segment, entry + 2, littleEndian);
+                // SHORT类型的值位于值域的前两个字节
+                long value = type == 3 ? readShort(segment, entry + 8, littleEndian)
+                        : readInt(segment, entry + 8, littleEndian);
+                if (tag == TAG_JPEG_OFFSET) {
+                    offset = value;
+                } else if (tag == TAG_JPEG_LENGTH) {
+                    length = value;
+                } else if (tag == TAG_COMPRESSION) {
+                    compression = (int) value;
+                }
+            }
+            if (compression != COMPRESSION_JPEG || offset <= 0 || length <= 0
+                    || tiff + offset + length > segment.length) {
+                return null;
+            }
+            byte[] thumbnail = new byte[(int) length];
+            System.arraycopy(segment, tiff + (int) offset, thumbnail, 0, (int) length);
+            return thumbnail;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // EXIF数据损坏
+            return null;
+        }
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean littleEndian) {
+        long b0 = data[offset] & 0xFF;
+        long b1 = data[offset + 1] & 0xFF;
+        long b2 = data[offset + 2] & 0xFF;
+        long b3 = data[offset + 3] & 0xFF;
+        return littleEndian ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0
+                : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+    }
+}
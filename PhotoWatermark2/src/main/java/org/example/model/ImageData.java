@@ -1,61 +1,92 @@
 package org.example.model;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * 图片数据类
+ * 只常驻文件引用、文件头中的尺寸和缩略图；完整图像在需要时才由服务层解码（见 ImageCache）。
+ * 缩略图保持原图宽高比，优先取自EXIF内嵌缩略图，否则通过降采样解码生成
  */
 public class ImageData {
-    private Image image;
-    private Image fullImage; // 添加完整图像用于预览
+    private static final int THUMBNAIL_SIZE = 100;
+
+    // 缩略图，volatile 使 getLoadedImage 无需加锁即可读取
+    private volatile Image image;
     private File file;
     private String name;
+    private int width = -1;
+    private int height = -1;
 
     public ImageData(File file) {
         this.file = file;
         this.name = file.getName();
-        // Load image thumbnail
-        try {
-            BufferedImage originalImage = ImageIO.read(file);
-            // 保存完整图像用于预览
-            this.fullImage = originalImage;
-            
-            // 创建缩略图
-            int thumbWidth = 100;
-            int thumbHeight = 100;
-            BufferedImage thumbnail = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = thumbnail.createGraphics();
-            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2d.drawImage(originalImage, 0, 0, thumbWidth, thumbHeight, null);
-            g2d.dispose();
-            this.image = thumbnail;
-        } catch (IOException e) {
-            e.printStackTrace();
+        // 只读取文件头获取尺寸，不解码像素
+        Dimension size = readDimensions(file);
+        if (size != null) {
+            this.width = size.width;
+            this.height = size.height;
         }
     }
 
+    /**
+     * 使用已经从文件头解析出的尺寸创建，不再读取文件
+     *
+     * @param width  图片宽度，未知时为-1
+     * @param height 图片高度，未知时为-1
+     */
+    public ImageData(File file, int width, int height) {
+        this.file = file;
+        this.name = file.getName();
+        this.width = width;
+        this.height = height;
+    }
+
     public ImageData(Image image, String name) {
         this.image = image;
         this.name = name;
     }
 
     // Getters and setters
+
+    /**
+     * 获取缩略图，首次访问时生成
+     * 解码在锁外进行，生成期间 getLoadedImage 不会被阻塞；多个线程同时生成时保留先完成的结果
+     */
     public Image getImage() {
+        Image loaded = image;
+        if (loaded == null && file != null) {
+            Image thumbnail = loadThumbnail();
+            synchronized (this) {
+                if (image == null) {
+                    image = thumbnail;
+                }
+                loaded = image;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 获取已经生成的缩略图，不会触发生成
+     *
+     * @return 缩略图，尚未生成时返回null
+     */
+    public Image getLoadedImage() {
         return image;
     }
 
     public void setImage(Image image) {
         this.image = image;
     }
-    
-    // 添加获取完整图像的方法
-    public Image getFullImage() {
-        return fullImage;
-    }
 
     public File getFile() {
         return file;
@@ -72,4 +103,134 @@ public class ImageData {
     public void setName(String name) {
         this.name = name;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return 图片宽度，无法读取时返回-1
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return 图片高度，无法读取时返回-1
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 设置图片尺寸，完整解码后用实际尺寸更新文件头中读取的尺寸
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 不解码完整图像直接生成缩略图
+     * 优先使用JPEG中EXIF内嵌的缩略图，否则按缩略图尺寸对源图进行降采样解码
+     */
+    private BufferedImage loadThumbnail() {
+        try {
+            if (width > 0 && height > 0) {
+                byte[] exifThumbnail = ExifThumbnailReader.read(file);
+                if (exifThumbnail != null) {
+                    BufferedImage embedded = ImageIO.read(new ByteArrayInputStream(exifThumbnail));
+                    if (isUsableThumbnail(embedded)) {
+                        return createThumbnail(embedded);
+                    }
+                }
+            }
+
+            try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+                if (input == null) {
+                    return null;
+                }
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+                if (!readers.hasNext()) {
+                    return null;
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    int sourceWidth = reader.getWidth(0);
+                    int sourceHeight = reader.getHeight(0);
+                    Dimension target = thumbnailSize(sourceWidth, sourceHeight);
+
+                    // 降采样后的尺寸不小于缩略图尺寸，再做一次双线性缩放
+                    int step = Math.max(1, Math.min(sourceWidth / target.width, sourceHeight / target.height));
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    return createThumbnail(reader.read(0, param));
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 内嵌缩略图必须足够大，且宽高比与原图一致（部分相机会在缩略图中加黑边）
+     */
+    private boolean isUsableThumbnail(BufferedImage embedded) {
+        if (embedded == null || Math.max(embedded.getWidth(), embedded.getHeight()) < THUMBNAIL_SIZE) {
+            return false;
+        }
+        double expected = (double) width / height;
+        double actual = (double) embedded.getWidth() / embedded.getHeight();
+        return Math.abs(actual - expected) / expected < 0.03;
+    }
+
+    /**
+     * 计算保持宽高比的缩略图尺寸，长边为 THUMBNAIL_SIZE
+     */
+    private static Dimension thumbnailSize(int sourceWidth, int sourceHeight) {
+        double scale = Math.min((double) THUMBNAIL_SIZE / sourceWidth, (double) THUMBNAIL_SIZE / sourceHeight);
+        int thumbWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int thumbHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        return new Dimension(thumbWidth, thumbHeight);
+    }
+
+    /**
+     * 创建缩略图
+     */
+    private static BufferedImage createThumbnail(BufferedImage originalImage) {
+        Dimension size = thumbnailSize(originalImage.getWidth(), originalImage.getHeight());
+        BufferedImage thumbnail = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(originalImage, 0, 0, size.width, size.height, null);
+        g2d.dispose();
+        return thumbnail;
+    }
+
+    /**
+     * 只读取文件头获取图片尺寸，不解码像素数据
+     *
+     * @param file 图片文件
+     * @return 图片尺寸，无法识别时返回null
+     */
+    public static Dimension readDimensions(File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
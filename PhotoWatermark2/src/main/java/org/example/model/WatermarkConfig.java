@@ -29,9 +29,13 @@ public class WatermarkConfig {
     // 边缘填充距离
     private double edgePadding = 20;
 
+    // 平铺模式（position 为 TILED）下相邻水印之间的间距
+    private double tileSpacing = 80;
+
     // 导出设置
     private String exportFormat = "PNG";
     private double jpegQuality = 90;
+    private boolean progressiveJpeg = false;
     private String namingConvention = "ORIGINAL";
     private String prefix = "";
     private String suffix = "_watermarked";
@@ -41,6 +45,45 @@ public class WatermarkConfig {
     private double resizeWidth = 0;
     private double resizeHeight = 0;
     private double resizePercentage = 100;
+    private String resizeFilter = "LANCZOS3";
+
+    /**
+     * 创建当前配置的副本
+     * 用于把配置快照交给后台线程，避免界面修改配置时影响正在进行的渲染
+     *
+     * @return 配置副本
+     */
+    public WatermarkConfig copy() {
+        WatermarkConfig copy = new WatermarkConfig();
+        copy.text = text;
+        copy.fontName = fontName;
+        copy.fontSize = fontSize;
+        copy.bold = bold;
+        copy.italic = italic;
+        copy.color = color;
+        copy.opacity = opacity;
+        copy.imageFile = imageFile;
+        copy.imageScale = imageScale;
+        copy.imageOpacity = imageOpacity;
+        copy.position = position;
+        copy.rotation = rotation;
+        copy.x = x;
+        copy.y = y;
+        copy.edgePadding = edgePadding;
+        copy.tileSpacing = tileSpacing;
+        copy.exportFormat = exportFormat;
+        copy.jpegQuality = jpegQuality;
+        copy.progressiveJpeg = progressiveJpeg;
+        copy.namingConvention = namingConvention;
+        copy.prefix = prefix;
+        copy.suffix = suffix;
+        copy.resizeEnabled = resizeEnabled;
+        copy.resizeWidth = resizeWidth;
+        copy.resizeHeight = resizeHeight;
+        copy.resizePercentage = resizePercentage;
+        copy.resizeFilter = resizeFilter;
+        return copy;
+    }
 
     // getters and setters
     public String getText() {
@@ -155,6 +198,22 @@ public class WatermarkConfig {
         this.y = y;
     }
 
+    public double getEdgePadding() {
+        return edgePadding;
+    }
+
+    public void setEdgePadding(double edgePadding) {
+        this.edgePadding = edgePadding;
+    }
+
+    public double getTileSpacing() {
+        return tileSpacing;
+    }
+
+    public void setTileSpacing(double tileSpacing) {
+        this.tileSpacing = tileSpacing;
+    }
+
     public String getExportFormat() {
         return exportFormat;
     }
@@ -171,6 +230,14 @@ public class WatermarkConfig {
         this.jpegQuality = jpegQuality;
     }
 
+    public boolean isProgressiveJpeg() {
+        return progressiveJpeg;
+    }
+
+    public void setProgressiveJpeg(boolean progressiveJpeg) {
+        this.progressiveJpeg = progressiveJpeg;
+    }
+
     public String getNamingConvention() {
         return namingConvention;
     }
@@ -226,4 +293,12 @@ public class WatermarkConfig {
     public void setResizePercentage(double resizePercentage) {
         this.resizePercentage = resizePercentage;
     }
-}
\ No newline at end of file
+
+    public String getResizeFilter() {
+        return resizeFilter;
+    }
+
+    public void setResizeFilter(String resizeFilter) {
+        this.resizeFilter = resizeFilter;
+    }
+}
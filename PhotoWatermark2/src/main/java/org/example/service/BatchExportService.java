@@ -0,0 +1,858 @@
+package org.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.example.model.ImageData;
+import org.example.model.WatermarkConfig;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 批量导出服务类
+ * 导出按流水线执行，I/O 与计算互相重叠：
+ * <ol>
+ *     <li>读取：每张图片一个虚拟线程，读取文件头并把文件内容读入内存</li>
+ *     <li>计算：固定大小的工作线程池（平台线程）解码、合成水印并编码到内存</li>
+ *     <li>写盘：少量虚拟线程把编码结果写入输出文件</li>
+ * </ol>
+ * 阶段之间由有界队列连接，下游跟不上时上游阻塞（背压），队列深度和等待时间记录在导出结果中（见 QueueStats）。
+ * 信号量限制整个流水线中同时处理中的图片数量，避免一次性提交全部任务导致内存占用失控；
+ * 读取阶段另按文件头中的尺寸估算每张图片的内存占用（文件内容、解码后的像素和编码缓冲区），
+ * 只有在内存预算（见 MemoryBudget）允许时才把文件内容读入内存，编码完成后归还大部分，编码结果占用的部分在写盘完成后归还，
+ * 大小图片混合时小图片可以全部并行，超大图片则等待预算空闲后单独处理。
+ * 每次导出结束后在输出文件夹中写入JSON格式的运行报告，包含各阶段的耗时分布（见 StageMetrics）。
+ * 导出过程记录在输出文件夹的日志中（见 ExportJournal），中断后继续导出或以后再次导出同一批图片时，
+ * 源文件和有效配置都没有变化的图片直接跳过，只重新生成指纹变化的输出
+ */
+public class BatchExportService {
+    private static final DateTimeFormatter REPORT_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // 写盘阶段的线程数量：写入的是已编码的完整内容，少量并发即可让磁盘保持繁忙
+    private static final int WRITER_COUNT = 4;
+    private static final String OUT_OF_MEMORY = "内存不足，请减小内存预算或增大最大堆内存（-Xmx）";
+
+    // 只用于计算输出尺寸，导出时每条流水线使用记录到本次统计的实例
+    private final WatermarkService watermarkService;
+    private final int workerCount;
+    private final int maxInFlight;
+    private final long memoryBudgetBytes;
+
+    /**
+     * 处理中图片上限默认为工作线程数量的4倍，足以让读取、计算和写盘三个阶段同时有图片可处理
+     *
+     * @param workerCount 工作线程数量
+     */
+    public BatchExportService(int workerCount) {
+        this(workerCount, workerCount * 4);
+    }
+
+    /**
+     * @param workerCount 工作线程数量（计算阶段的线程数）
+     * @param maxInFlight 同时处理中（已提交但未完成）的图片数量上限，包括各阶段队列中等待的图片
+     */
+    public BatchExportService(int workerCount, int maxInFlight) {
+        this(workerCount, maxInFlight, MemoryBudget.createDefault().getBudgetBytes());
+    }
+
+    /**
+     * @param workerCount       工作线程数量（计算阶段的线程数）
+     * @param maxInFlight       同时处理中（已提交但未完成）的图片数量上限，包括各阶段队列中等待的图片
+     * @param memoryBudgetBytes 同时解码处理的图片估算像素字节数之和的上限
+     */
+    public BatchExportService(int workerCount, int maxInFlight, long memoryBudgetBytes) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("工作线程数量必须大于0: " + workerCount);
+        }
+        if (maxInFlight < workerCount) {
+            throw new IllegalArgumentException("处理中图片上限不能小于工作线程数量: " + maxInFlight);
+        }
+        this.watermarkService = new WatermarkService();
+        this.workerCount = workerCount;
+        this.maxInFlight = maxInFlight;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * 批量导出图片
+     * 输入按迭代顺序逐个提交，只有在处理中的图片数量低于上限时才会读取下一个输入，
+     * 因此输入可以是惰性的（例如目录流），无需事先构建完整列表。
+     * 日志中记录为已完成（配置指纹、源文件和输出文件均未变化）的图片直接跳过。
+     * 多张图片映射到同一个输出文件时，后出现的图片改用带序号的文件名（见 claimOutputFile），不会互相覆盖
+     *
+     * @param sources      待导出的源图片
+     * @param config       水印配置，导出期间不应再被修改
+     * @param outputFolder 输出文件夹
+     * @return 导出结果统计
+     * @throws InterruptedException 导出线程被中断时抛出，此时未完成的任务会被取消
+     */
+    public ExportResult export(Iterable<File> sources, WatermarkConfig config, File outputFolder)
+            throws InterruptedException {
+        return export(sources, config, outputFolder, new StageMetrics());
+    }
+
+    /**
+     * 批量导出图片，各阶段耗时记录到调用方提供的统计中
+     * 导出只使用该实例，不会记录到默认实例，同时进行的预览不会混入；调用方可以在导出期间取快照显示进度
+     *
+     * @param sources      待导出的源图片
+     * @param config       水印配置，导出期间不应再被修改
+     * @param outputFolder 输出文件夹
+     * @param metrics      本次导出使用的统计
+     * @return 导出结果统计
+     * @throws InterruptedException 导出线程被中断时抛出，此时未完成的任务会被取消
+     */
+    public ExportResult export(Iterable<File> sources, WatermarkConfig config, File outputFolder,
+                               StageMetrics metrics) throws InterruptedException {
+        return export(sources, config, outputFolder, source -> outputFolder, metrics);
+    }
+
+    /**
+     * 批量导出图片，每张图片写入调用方指定的文件夹（例如在输出文件夹中保持输入的目录结构），
+     * 导出日志和运行报告仍然写在 outputFolder 中
+     *
+     * @param sources        待导出的源图片
+     * @param config         水印配置，导出期间不应再被修改
+     * @param outputFolder   输出文件夹
+     * @param outputFolderOf 源图片对应的输出文件夹，为 outputFolder 或其子文件夹，不存在时自动创建
+     * @param metrics        本次导出使用的统计
+     * @return 导出结果统计
+     * @throws InterruptedException 导出线程被中断时抛出，此时未完成的任务会被取消
+     */
+    public ExportResult export(Iterable<File> sources, WatermarkConfig config, File outputFolder,
+                               Function<File, File> outputFolderOf, StageMetrics metrics)
+            throws InterruptedException {
+        int skipped = 0;
+        StageMetrics.Snapshot startSnapshot = metrics.snapshot();
+        LocalDateTime startTime = LocalDateTime.now();
+        long startNanos = System.nanoTime();
+        ExportJournal journal = openJournal(config, outputFolder);
+        Pipeline pipeline = new Pipeline(config, journal, metrics);
+        // 本次导出已使用的输出文件
+        Set<String> claimed = new HashSet<>();
+
+        try {
+            for (File source : sources) {
+                File folder = outputFolderOf.apply(source);
+                if (!folder.equals(outputFolder)) {
+                    // 创建失败时写盘阶段会报告该图片失败
+                    folder.mkdirs();
+                }
+                File outputFile = claimOutputFile(source, buildOutputFile(source, config, folder), claimed);
+                if (journal != null && journal.isCompleted(source, outputFile)) {
+                    skipped++;
+                    continue;
+                }
+                pipeline.submit(source, outputFile);
+            }
+            pipeline.awaitCompletion();
+        } finally {
+            pipeline.shutdown();
+            closeJournal(journal);
+        }
+
+        ExportResult result = new ExportResult(pipeline.succeeded.get(), pipeline.failed.get(), skipped,
+                System.nanoTime() - startNanos, pipeline.bytesCopied.get(), metrics.snapshot().minus(startSnapshot),
+                pipeline.queueStats(), pipeline.memory);
+        writeReport(result, config, outputFolder, startTime);
+        return result;
+    }
+
+    /**
+     * 打开输出文件夹中的导出日志，打开失败时不使用日志（不跳过任何图片）
+     */
+    private ExportJournal openJournal(WatermarkConfig config, File outputFolder) {
+        try {
+            return ExportJournal.open(outputFolder, ConfigFingerprint.of(config));
+        } catch (IOException e) {
+            System.err.println("打开导出日志失败: " + outputFolder + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 关闭导出日志
+     */
+    private void closeJournal(ExportJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("关闭导出日志失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在输出文件夹中写入JSON格式的运行报告，写入失败不影响导出结果
+     */
+    private void writeReport(ExportResult result, WatermarkConfig config, File outputFolder, LocalDateTime startTime) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startTime.toString());
+        report.put("workers", workerCount);
+        report.put("exportFormat", config.getExportFormat());
+        report.put("succeeded", result.getSucceeded());
+        report.put("failed", result.getFailed());
+        report.put("skipped", result.getSkipped());
+        report.putAll(result.getMetrics().toReport());
+        Map<String, Object> queues = new LinkedHashMap<>();
+        for (QueueStats stats : result.getQueueStats()) {
+            queues.put(stats.getName(), stats.toReport());
+        }
+        report.put("queues", queues);
+        Map<String, Object> memory = new LinkedHashMap<>();
+        memory.put("budgetBytes", result.getMemoryBudget().getBudgetBytes());
+        memory.put("peakBytes", result.getMemoryBudget().getPeakBytes());
+        memory.put("waits", result.getMemoryBudget().getWaits());
+        memory.put("waitMillis", result.getMemoryBudget().getWaitNanos() / 1e6);
+        report.put("memory", memory);
+
+        File reportFile = new File(outputFolder, "watermark-report-" + REPORT_TIMESTAMP.format(startTime) + ".json");
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        } catch (IOException e) {
+            System.err.println("写入运行报告失败: " + reportFile + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按文件头中的尺寸估算处理一张图片需要的内存：读入内存的文件内容、解码后的图像、尺寸调整后的图像以及编码缓冲区
+     * 像素按每个4字节估算（解码器原生布局最多4字节），编码缓冲区按 PNG 每像素3字节、JPEG 每像素1字节估算
+     *
+     * @param width       图片宽度，未知时为-1
+     * @param height      图片高度，未知时为-1
+     * @param sourceBytes 读入内存的文件内容字节数，不读取时为0
+     * @param stream      是否按条带流式处理
+     */
+    long estimateBytes(int width, int height, long sourceBytes, WatermarkConfig config, boolean stream) {
+        if (stream) {
+            // 流式处理只保留一两个条带
+            return StreamingWatermarkService.estimateBytes(width, height);
+        }
+        if (width <= 0 || height <= 0) {
+            // 尺寸未知（文件头无法识别），按平均每个工作线程的份额估算
+            return Math.max(memoryBudgetBytes / workerCount, sourceBytes);
+        }
+        long bytes = sourceBytes + (long) width * height * 4;
+        Dimension output = watermarkService.getOutputSize(width, height, config);
+        long outputPixels = (long) output.width * output.height;
+        if (config.isResizeEnabled()) {
+            bytes += outputPixels * 4;
+        }
+        bytes += outputPixels * (WatermarkService.isJpeg(config.getExportFormat()) ? 1 : 3);
+        return bytes;
+    }
+
+    /**
+     * 在导出日志中记录已完成的输出，记录失败只影响下次能否跳过，不影响本次导出结果
+     */
+    private void recordCompleted(ExportJournal journal, File source, File outputFile) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.record(source, outputFile);
+        } catch (IOException e) {
+            System.err.println("写入导出日志失败: " + source + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把导出日志中缓冲的记录写入磁盘，失败只影响下次能否跳过
+     */
+    private void syncJournal(ExportJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            System.err.println("写入导出日志失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 根据命名规则生成输出文件
+     *
+     * @param source       源图片文件
+     * @param config       水印配置（包含导出格式和命名规则）
+     * @param outputFolder 输出文件夹
+     * @return 输出文件
+     */
+    public static File buildOutputFile(File source, WatermarkConfig config, File outputFolder) {
+        String originalName = source.getName();
+        int dotIndex = originalName.lastIndexOf('.');
+        String nameWithoutExtension = dotIndex > 0 ? originalName.substring(0, dotIndex) : originalName;
+        String extension = config.getExportFormat().toLowerCase();
+
+        String outputName;
+        switch (config.getNamingConvention()) {
+            case "PREFIX":
+                outputName = config.getPrefix() + nameWithoutExtension + "." + extension;
+                break;
+            case "SUFFIX":
+                outputName = nameWithoutExtension + config.getSuffix() + "." + extension;
+                break;
+            default: // ORIGINAL
+                outputName = nameWithoutExtension + "." + extension;
+                break;
+        }
+        return new File(outputFolder, outputName);
+    }
+
+    /**
+     * 为源图片占用输出文件：已被本次导出中先出现的图片占用时（例如递归导入的不同文件夹中的同名图片，
+     * 或者同名但扩展名不同的图片），依次尝试在文件名后加上 _2、_3 ...，不会静默覆盖先导出的图片。
+     * 输入顺序不变时序号也不变，日志因此仍能跳过这些图片。
+     * 比较时不区分大小写，与 Windows 和 macOS 默认的文件系统一致
+     *
+     * @param source     源图片，改名时用于提示
+     * @param outputFile 按命名规则生成的输出文件
+     * @param claimed    本次导出已使用的输出文件
+     * @return 实际使用的输出文件
+     */
+    static File claimOutputFile(File source, File outputFile, Set<String> claimed) {
+        if (claimed.add(outputFile.getAbsolutePath().toLowerCase(Locale.ROOT))) {
+            return outputFile;
+        }
+        String name = outputFile.getName();
+        int dotIndex = name.lastIndexOf('.');
+        String nameWithoutExtension = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+        String extension = dotIndex > 0 ? name.substring(dotIndex) : "";
+        for (int i = 2; ; i++) {
+            File candidate = new File(outputFile.getParentFile(), nameWithoutExtension + "_" + i + extension);
+            if (claimed.add(candidate.getAbsolutePath().toLowerCase(Locale.ROOT))) {
+                System.err.println("输出文件名重复: " + source + " 改为导出到 " + candidate.getName());
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * 导出结果统计
+     */
+    public static class ExportResult {
+        private final int succeeded;
+        private final int failed;
+        private final int skipped;
+        private final long elapsedNanos;
+        private final long bytesCopied;
+        private final StageMetrics.Snapshot metrics;
+        private final List<QueueStats> queueStats;
+        private final MemoryBudget memoryBudget;
+
+        public ExportResult(int succeeded, int failed, int skipped, long elapsedNanos, long bytesCopied,
+                            StageMetrics.Snapshot metrics, List<QueueStats> queueStats, MemoryBudget memoryBudget) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+            this.bytesCopied = bytesCopied;
+            this.metrics = metrics;
+            this.queueStats = queueStats;
+            this.memoryBudget = memoryBudget;
+        }
+
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return 此前已导出完成而跳过的图片数量
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return 合成水印时复制的像素字节总数
+         */
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        /**
+         * @return 本次导出期间各阶段的统计
+         */
+        public StageMetrics.Snapshot getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return 流水线各阶段之间队列的统计，按流水线顺序排列
+         */
+        public List<QueueStats> getQueueStats() {
+            return queueStats;
+        }
+
+        /**
+         * @return 本次导出的内存预算及其峰值、等待统计
+         */
+        public MemoryBudget getMemoryBudget() {
+            return memoryBudget;
+        }
+
+        /**
+         * @return 各队列的平均/最大深度和等待时间的单行摘要
+         */
+        public String getQueueStatusText() {
+            StringBuilder text = new StringBuilder();
+            for (QueueStats stats : queueStats) {
+                if (text.length() > 0) {
+                    text.append(" | ");
+                }
+                text.append(stats);
+            }
+            return text.toString();
+        }
+
+        /**
+         * @return 平均每张图片复制的像素字节数
+         */
+        public long getBytesCopiedPerImage() {
+            return succeeded == 0 ? 0 : bytesCopied / succeeded;
+        }
+
+        /**
+         * @return 吞吐量（张/秒）
+         */
+        public double getImagesPerSecond() {
+            if (elapsedNanos <= 0) {
+                return 0;
+            }
+            return succeeded / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("成功 %d 张，失败 %d 张，跳过 %d 张，耗时 %.2f 秒，吞吐量 %.2f 张/秒，平均每张复制 %.1f KB",
+                    succeeded, failed, skipped, elapsedNanos / 1_000_000_000.0, getImagesPerSecond(),
+                    getBytesCopiedPerImage() / 1024.0);
+        }
+    }
+
+    /**
+     * 一次导出的流水线
+     * 读取阶段的虚拟线程按需创建，计算和写盘阶段的线程在创建时启动，循环从各自的输入队列取出图片，
+     * 导出结束时通过中断停止
+     */
+    private class Pipeline {
+        private final WatermarkConfig config;
+        private final ExportJournal journal;
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        // 已读入内存、等待计算的图片
+        private final StageQueue computeQueue = new StageQueue("compute", workerCount);
+        // 已编码、等待写盘的图片
+        private final StageQueue writeQueue = new StageQueue("write", workerCount);
+        private final MemoryBudget memory = new MemoryBudget(memoryBudgetBytes);
+        private final ExecutorService readers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("export-reader-", 1).factory());
+        private final ExecutorService workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        private final ExecutorService writers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("export-writer-", 1).factory());
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong bytesCopied = new AtomicLong();
+        private final StageMetrics metrics;
+        private final WatermarkService watermarkService;
+        private final StreamingWatermarkService streamingService;
+
+        Pipeline(WatermarkConfig config, ExportJournal journal, StageMetrics metrics) {
+            this.config = config;
+            this.journal = journal;
+            this.metrics = metrics;
+            this.watermarkService = new WatermarkService(metrics);
+            this.streamingService = new StreamingWatermarkService(watermarkService);
+            for (int i = 0; i < workerCount; i++) {
+                workers.execute(this::runComputeStage);
+            }
+            for (int i = 0; i < WRITER_COUNT; i++) {
+                writers.execute(this::runWriteStage);
+            }
+        }
+
+        /**
+         * 提交一张图片，处理中的图片达到上限时阻塞
+         */
+        void submit(File source, File outputFile) throws InterruptedException {
+            inFlight.acquire();
+            try {
+                readers.execute(() -> read(new Job(source, outputFile)));
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        /**
+         * 等待已提交的图片全部完成
+         */
+        void awaitCompletion() throws InterruptedException {
+            // 取回全部许可即表示所有图片均已完成
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        /**
+         * 停止各阶段的线程，导出被中断时未完成的图片随之取消
+         */
+        void shutdown() {
+            readers.shutdownNow();
+            workers.shutdownNow();
+            writers.shutdownNow();
+        }
+
+        List<QueueStats> queueStats() {
+            return List.of(computeQueue.stats(), writeQueue.stats());
+        }
+
+        /**
+         * 读取阶段（虚拟线程）：读取文件头决定处理方式，在内存预算允许时再把文件内容读入内存
+         * 缓存中已有解码图像（例如预览过）的图片和超大图片不读取文件内容。
+         * 整张图片需要的内存在这里一次申请，计算和写盘阶段只归还、不再申请：
+         * 若分两次申请，已持有文件内容预算、排队等待计算的图片可能占满预算，计算线程则永远等不到解码所需的预算
+         */
+        private void read(Job job) {
+            try {
+                job.imageData = new ImageData(job.source);
+                job.stream = StreamingWatermarkService.shouldStream(job.imageData.getWidth(),
+                        job.imageData.getHeight(), config);
+                boolean readSource = !job.stream && !ImageCache.getDefault().contains(job.source);
+                job.estimatedBytes = estimateBytes(job.imageData.getWidth(), job.imageData.getHeight(),
+                        readSource ? job.source.length() : 0, config, job.stream);
+                job.granted = memory.acquire(job.estimatedBytes);
+                if (readSource) {
+                    long start = System.nanoTime();
+                    job.sourceBytes = Files.readAllBytes(job.source.toPath());
+                    metrics.record(StageMetrics.Stage.READ, System.nanoTime() - start);
+                }
+                computeQueue.put(job);
+            } catch (InterruptedException e) {
+                // 导出已取消
+                releaseMemory(job);
+            } catch (Exception e) {
+                releaseMemory(job);
+                fail(job, e.getMessage());
+            } catch (OutOfMemoryError e) {
+                // 图片必须算作失败并归还许可，否则导出会一直等待这张图片
+                releaseMemory(job);
+                fail(job, OUT_OF_MEMORY);
+            }
+        }
+
+        /**
+         * 计算阶段（平台线程）：循环处理队列中的图片，直到导出结束时被中断
+         */
+        private void runComputeStage() {
+            try {
+                while (true) {
+                    Job job = computeQueue.take();
+                    if (compute(job)) {
+                        writeQueue.put(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 导出结束
+            }
+        }
+
+        /**
+         * 解码、合成水印并编码到内存；超大图片按条带流式处理并直接写出
+         * 编码完成后归还读取阶段申请的预算中除编码结果以外的部分，编码结果占用的预算在写盘完成后归还
+         *
+         * @return 是否需要交给写盘阶段
+         */
+        private boolean compute(Job job) {
+            try {
+                if (job.stream) {
+                    streamingService.export(job.source, config, job.outputFile);
+                    complete(job);
+                    return false;
+                }
+
+                // 写时复制：只复制水印覆盖的区域，缓存中的原图保持不变，无需为每次导出复制整张图片。
+                // 缓存中没有时解码得到的图像只属于这张图片，不放入缓存：缓存不受内存预算约束，
+                // 否则导出期间实际占用的内存会比预算多出整个缓存
+                CopyOnWriteImage watermarkedImage = ImageCache.getDefault().readFullImage(job.imageData,
+                        job.sourceBytes, metrics, false, fullImage -> watermarkService.composite(fullImage, config));
+                job.sourceBytes = null;
+                if (watermarkedImage == null) {
+                    fail(job, "无法解码图片");
+                    return false;
+                }
+                job.bytesCopied = watermarkedImage.getBytesCopied();
+                job.outputBytes = watermarkService.encodeImage(watermarkedImage.getImage(),
+                        config.getExportFormat(), (int) config.getJpegQuality(), config.isProgressiveJpeg());
+                return true;
+            } catch (Exception e) {
+                fail(job, e.getMessage());
+                return false;
+            } catch (OutOfMemoryError e) {
+                // 图片必须算作失败并归还许可，否则导出会一直等待这张图片
+                fail(job, OUT_OF_MEMORY);
+                return false;
+            } finally {
+                if (job.outputBytes != null) {
+                    job.granted = memory.shrink(job.granted, job.outputBytes.length);
+                } else {
+                    releaseMemory(job);
+                }
+            }
+        }
+
+        /**
+         * 归还图片申请的内存预算，未申请或已归还时不做任何事
+         */
+        private void releaseMemory(Job job) {
+            if (job.granted > 0) {
+                memory.release(job.granted);
+                job.granted = 0;
+            }
+        }
+
+        /**
+         * 写盘阶段（虚拟线程）：循环写出队列中的图片，直到导出结束时被中断
+         */
+        private void runWriteStage() {
+            try {
+                while (true) {
+                    Job job = writeQueue.take();
+                    try {
+                        WatermarkService.writeBytes(job.outputBytes, job.outputFile, metrics);
+                        complete(job);
+                    } catch (Exception e) {
+                        fail(job, e.getMessage());
+                    } catch (OutOfMemoryError e) {
+                        fail(job, OUT_OF_MEMORY);
+                    } finally {
+                        job.outputBytes = null;
+                        releaseMemory(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 导出结束
+            }
+        }
+
+        private void complete(Job job) {
+            recordCompleted(journal, job.source, job.outputFile);
+            succeeded.incrementAndGet();
+            bytesCopied.addAndGet(job.bytesCopied);
+            metrics.addImage();
+            metrics.addBytesCopied(job.bytesCopied);
+            release();
+        }
+
+        private void fail(Job job, String message) {
+            failed.incrementAndGet();
+            System.err.println("导出图片失败: " + job.source + " - " + message);
+            release();
+        }
+
+        /**
+         * 归还图片占用的许可；流水线因此空闲时（例如热文件夹的一个批次处理完、等待新文件）同步导出日志，
+         * 否则日志只在下一条记录到达时才检查是否需要同步，最后一批记录会在空闲期间一直留在缓冲区中
+         */
+        private void release() {
+            inFlight.release();
+            if (inFlight.availablePermits() == maxInFlight) {
+                syncJournal(journal);
+            }
+        }
+    }
+
+    /**
+     * 流水线中的一张图片，依次经过各阶段，同一时刻只由一个线程访问
+     */
+    private static class Job {
+        private final File source;
+        private final File outputFile;
+        private ImageData imageData;
+        private boolean stream;
+        private long estimatedBytes;
+        // 读取阶段申请的内存预算，归还后为0
+        private long granted;
+        private byte[] sourceBytes;
+        private byte[] outputBytes;
+        private long bytesCopied;
+
+        Job(File source, File outputFile) {
+            this.source = source;
+            this.outputFile = outputFile;
+        }
+    }
+
+    /**
+     * 连接两个阶段的有界队列
+     * 每次放入后记录队列深度，并分别累计生产方因队列已满、消费方因队列为空而等待的时间：
+     * 生产方等待多说明下游是瓶颈，消费方等待多说明上游是瓶颈
+     */
+    private static class StageQueue {
+        private final String name;
+        private final BlockingQueue<Job> queue;
+        private final int capacity;
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder depthSum = new LongAdder();
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final LongAdder putWaitNanos = new LongAdder();
+        private final LongAdder takeWaitNanos = new LongAdder();
+
+        StageQueue(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void put(Job job) throws InterruptedException {
+            if (!queue.offer(job)) {
+                long start = System.nanoTime();
+                queue.put(job);
+                putWaitNanos.add(System.nanoTime() - start);
+            }
+            int depth = queue.size();
+            samples.increment();
+            depthSum.add(depth);
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        Job take() throws InterruptedException {
+            Job job = queue.poll();
+            if (job == null) {
+                long start = System.nanoTime();
+                job = queue.take();
+                takeWaitNanos.add(System.nanoTime() - start);
+            }
+            return job;
+        }
+
+        QueueStats stats() {
+            long count = samples.sum();
+            return new QueueStats(name, capacity, count == 0 ? 0 : (double) depthSum.sum() / count,
+                    maxDepth.get(), putWaitNanos.sum(), takeWaitNanos.sum());
+        }
+    }
+
+    /**
+     * 流水线队列的统计
+     */
+    public static class QueueStats {
+        private final String name;
+        private final int capacity;
+        private final double meanDepth;
+        private final int maxDepth;
+        private final long putWaitNanos;
+        private final long takeWaitNanos;
+
+        public QueueStats(String name, int capacity, double meanDepth, int maxDepth, long putWaitNanos,
+                          long takeWaitNanos) {
+            this.name = name;
+            this.capacity = capacity;
+            this.meanDepth = meanDepth;
+            this.maxDepth = maxDepth;
+            this.putWaitNanos = putWaitNanos;
+            this.takeWaitNanos = takeWaitNanos;
+        }
+
+        /**
+         * @return 队列名称：compute（等待计算）或 write（等待写盘）
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * @return 每次放入后的平均队列深度
+         */
+        public double getMeanDepth() {
+            return meanDepth;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        /**
+         * @return 上游因队列已满而阻塞的总时间（纳秒）
+         */
+        public long getPutWaitNanos() {
+            return putWaitNanos;
+        }
+
+        /**
+         * @return 下游因队列为空而空闲的总时间（纳秒），包括导出结束前的等待
+         */
+        public long getTakeWaitNanos() {
+            return takeWaitNanos;
+        }
+
+        Map<String, Object> toReport() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("capacity", capacity);
+            report.put("meanDepth", meanDepth);
+            report.put("maxDepth", maxDepth);
+            report.put("putWaitMillis", putWaitNanos / 1e6);
+            report.put("takeWaitMillis", takeWaitNanos / 1e6);
+            return report;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s 队列 平均 %.1f / 最大 %d（容量 %d），上游阻塞 %.0f ms，下游空闲 %.0f ms",
+                    name, meanDepth, maxDepth, capacity, putWaitNanos / 1e6, takeWaitNanos / 1e6);
+        }
+    }
+
+    /**
+     * 工作线程工厂，使用守护线程以免阻止应用退出
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "export-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
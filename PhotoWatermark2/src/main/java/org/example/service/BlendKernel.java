@@ -0,0 +1,97 @@
+package org.example.service;
+
+/**
+ * SRC_OVER 混合内核
+ * 源数据是预乘透明度的8位分量，inverseAlpha 中对应位置是该像素的 255 - α，
+ * 内核逐个分量计算 dst = src + dst * inverseAlpha / 255（四舍五入）。
+ * 对预乘的目标图像，这对全部分量（包括透明度）都是 Porter-Duff SRC_OVER；
+ * 对不透明的目标图像则只有颜色分量有意义。
+ * 分量的排列方式（BGR、ABGR、打包的ARGB）由调用方准备的源数组决定，内核本身与像素布局无关，见 SpriteBlender。
+ *
+ * 运行时加载了 jdk.incubator.vector 模块（--add-modules jdk.incubator.vector）时使用 Vector API 实现，
+ * 否则使用标量实现
+ */
+abstract class BlendKernel {
+    /**
+     * 设置该系统属性为 true 时强制使用标量实现
+     */
+    static final String SCALAR_PROPERTY = "photowatermark.blend.scalar";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final BlendKernel DEFAULT = create();
+
+    /**
+     * @return 当前运行环境下最快的内核
+     */
+    static BlendKernel getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return 内核名称，用于日志和基准测试
+     */
+    abstract String getName();
+
+    /**
+     * 混合字节数组中连续的 length 个分量
+     */
+    abstract void blend(byte[] dst, int dstOffset, byte[] src, byte[] inverseAlpha, int srcOffset, int length);
+
+    /**
+     * 混合整型数组中连续的 length 个打包像素，inverseAlpha 的每个字节都是该像素的 255 - α
+     */
+    abstract void blend(int[] dst, int dstOffset, int[] src, int[] inverseAlpha, int srcOffset, int length);
+
+    static void blendScalar(byte[] dst, int dstOffset, byte[] src, byte[] inverseAlpha, int srcOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int t = (dst[dstOffset + i] & 0xff) * (inverseAlpha[srcOffset + i] & 0xff) + 128;
+            dst[dstOffset + i] = (byte) ((src[srcOffset + i] & 0xff) + ((t + (t >>> 8)) >>> 8));
+        }
+    }
+
+    static void blendScalar(int[] dst, int dstOffset, int[] src, int[] inverseAlpha, int srcOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            int d = dst[dstOffset + i];
+            int ia = inverseAlpha[srcOffset + i] & 0xff;
+            // 一次乘法同时处理两个分量（红蓝、透明度和绿），每个分量占16位，互不进位
+            int rb = (d & 0x00ff00ff) * ia + 0x00800080;
+            rb = ((rb + ((rb >>> 8) & 0x00ff00ff)) >>> 8) & 0x00ff00ff;
+            int ag = ((d >>> 8) & 0x00ff00ff) * ia + 0x00800080;
+            ag = (ag + ((ag >>> 8) & 0x00ff00ff)) & 0xff00ff00;
+            dst[dstOffset + i] = src[srcOffset + i] + (rb | ag);
+        }
+    }
+
+    private static BlendKernel create() {
+        if (!Boolean.getBoolean(SCALAR_PROPERTY) && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // 通过反射加载，未加载向量模块时不会解析到 jdk.incubator.vector 中的类
+                return (BlendKernel) Class.forName("org.example.service.VectorBlendKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("无法使用 Vector API 混合内核，改用标量实现: " + e);
+            }
+        }
+        return new Scalar();
+    }
+
+    /**
+     * 标量实现
+     */
+    static class Scalar extends BlendKernel {
+        @Override
+        String getName() {
+            return "scalar";
+        }
+
+        @Override
+        void blend(byte[] dst, int dstOffset, byte[] src, byte[] inverseAlpha, int srcOffset, int length) {
+            blendScalar(dst, dstOffset, src, inverseAlpha, srcOffset, length);
+        }
+
+        @Override
+        void blend(int[] dst, int dstOffset, int[] src, int[] inverseAlpha, int srcOffset, int length) {
+            blendScalar(dst, dstOffset, src, inverseAlpha, srcOffset, length);
+        }
+    }
+}
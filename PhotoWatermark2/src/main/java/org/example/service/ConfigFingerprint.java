@@ -0,0 +1,126 @@
+package org.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializer;
+import org.example.model.WatermarkConfig;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * 水印配置的指纹
+ * 对有效配置的全部字段（通过反射序列化，新增字段自动参与）计算摘要，
+ * 图片水印文件还包括修改时间和大小，水印图片被替换后指纹随之改变。
+ * 有效配置把不影响输出像素和编码的字段恢复为默认值（见 effective），
+ * 例如图片水印的文字设置、PNG导出时的JPEG质量，修改这些字段不会导致重新导出；
+ * 命名规则只决定输出文件名，由导出索引单独比较。
+ * 指纹相同的两次导出对同一张源图产生相同的输出
+ */
+public final class ConfigFingerprint {
+    // 按边缘对齐的预设位置，其余位置（平铺除外）使用自定义坐标
+    private static final Set<String> ANCHORED_POSITIONS = Set.of("TOP_LEFT", "TOP_CENTER", "TOP_RIGHT",
+            "CENTER_LEFT", "CENTER", "CENTER_RIGHT", "BOTTOM_LEFT", "BOTTOM_CENTER", "BOTTOM_RIGHT");
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(File.class, (JsonSerializer<File>) (file, type, context) -> {
+                JsonObject json = new JsonObject();
+                json.addProperty("path", file.getAbsolutePath());
+                json.addProperty("lastModified", file.lastModified());
+                json.addProperty("length", file.length());
+                return json;
+            })
+            .create();
+
+    private ConfigFingerprint() {
+    }
+
+    /**
+     * 计算配置的指纹
+     *
+     * @param config 水印配置
+     * @return 十六进制的 SHA-256 摘要前16字节
+     */
+    public static String of(WatermarkConfig config) {
+        byte[] canonical = GSON.toJson(effective(config)).getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // 所有Java平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 生成有效配置：与 WatermarkService 的取舍保持一致，把不会被用到的字段恢复为默认值
+     *
+     * @param config 水印配置
+     * @return 有效配置的副本
+     */
+    static WatermarkConfig effective(WatermarkConfig config) {
+        WatermarkConfig effective = config.copy();
+        WatermarkConfig defaults = new WatermarkConfig();
+
+        // 水印图片存在时优先使用图片水印，否则使用文本水印
+        boolean imageWatermark = config.getImageFile() != null && config.getImageFile().exists();
+        boolean textWatermark = !imageWatermark && config.getText() != null && !config.getText().isEmpty();
+        if (!imageWatermark) {
+            effective.setImageFile(null);
+            effective.setImageScale(defaults.getImageScale());
+            effective.setImageOpacity(defaults.getImageOpacity());
+        }
+        if (!textWatermark) {
+            effective.setText(defaults.getText());
+            effective.setFontName(defaults.getFontName());
+            effective.setFontSize(defaults.getFontSize());
+            effective.setBold(defaults.isBold());
+            effective.setItalic(defaults.isItalic());
+            effective.setColor(defaults.getColor());
+            effective.setOpacity(defaults.getOpacity());
+        }
+        if (!imageWatermark && !textWatermark) {
+            effective.setPosition(defaults.getPosition());
+            effective.setRotation(defaults.getRotation());
+        }
+
+        String position = effective.getPosition();
+        if (!WatermarkService.TILED.equals(position)) {
+            effective.setTileSpacing(defaults.getTileSpacing());
+        }
+        // 边距只用于锚定位置的文字水印，图片水印的锚定位置不留边距
+        if (imageWatermark || !ANCHORED_POSITIONS.contains(position)) {
+            effective.setEdgePadding(defaults.getEdgePadding());
+        }
+        if (ANCHORED_POSITIONS.contains(position) || WatermarkService.TILED.equals(position)) {
+            effective.setX(defaults.getX());
+            effective.setY(defaults.getY());
+        }
+
+        if (!WatermarkService.isJpeg(config.getExportFormat())) {
+            effective.setJpegQuality(defaults.getJpegQuality());
+            effective.setProgressiveJpeg(defaults.isProgressiveJpeg());
+        }
+        effective.setNamingConvention(defaults.getNamingConvention());
+        effective.setPrefix(defaults.getPrefix());
+        effective.setSuffix(defaults.getSuffix());
+
+        if (!config.isResizeEnabled()) {
+            effective.setResizeWidth(defaults.getResizeWidth());
+            effective.setResizeHeight(defaults.getResizeHeight());
+            effective.setResizePercentage(defaults.getResizePercentage());
+            effective.setResizeFilter(defaults.getResizeFilter());
+        } else if (config.getResizeWidth() > 0 && config.getResizeHeight() > 0) {
+            effective.setResizePercentage(defaults.getResizePercentage());
+        } else {
+            effective.setResizeWidth(defaults.getResizeWidth());
+            effective.setResizeHeight(defaults.getResizeHeight());
+        }
+        return effective;
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * 写时复制图像类
+ * 只复制源图中需要修改的矩形区域（补丁），读取像素时区域内取补丁，区域外直接取源图，源图始终保持不变。
+ * 编码器按行读取时，与补丁不相交的行直接返回源图的子栅格，不产生任何复制。
+ *
+ * 只支持单一数据库（bank）、无偏移的常见像素布局（ImageIO 解码得到的图像均属此类），
+ * 其它布局退化为完整复制
+ */
+public class CopyOnWriteImage {
+    private final BufferedImage image;
+    private final BufferedImage patch;
+    private final Rectangle dirty;
+    private final long bytesCopied;
+
+    private CopyOnWriteImage(BufferedImage image, BufferedImage patch, Rectangle dirty, long bytesCopied) {
+        this.image = image;
+        this.patch = patch;
+        this.dirty = dirty;
+        this.bytesCopied = bytesCopied;
+    }
+
+    /**
+     * 以源图创建写时复制图像，只复制 dirty 区域
+     *
+     * @param source 源图，不会被修改
+     * @param dirty  需要修改的区域
+     */
+    public static CopyOnWriteImage create(BufferedImage source, Rectangle dirty) {
+        Rectangle region = dirty.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+        if (region.isEmpty()) {
+            return new CopyOnWriteImage(source, null, region, 0);
+        }
+
+        WritableRaster sourceRaster = source.getRaster();
+        if (!isSupported(sourceRaster)) {
+            // 不支持的像素布局，完整复制
+            BufferedImage copy = ImageCache.copy(source);
+            Rectangle all = new Rectangle(0, 0, source.getWidth(), source.getHeight());
+            return new CopyOnWriteImage(copy, copy, all, ImageCache.sizeOf(copy));
+        }
+
+        WritableRaster patchRaster = sourceRaster.createCompatibleWritableRaster(region.width, region.height);
+        // 注意：ByteInterleavedRaster.setRect 在偏移为负时复制的位置不正确，因此通过子栅格复制
+        patchRaster.setDataElements(0, 0,
+                sourceRaster.createChild(region.x, region.y, region.width, region.height, 0, 0, null));
+        ColorModel colorModel = source.getColorModel();
+        BufferedImage patch = new BufferedImage(colorModel, patchRaster, colorModel.isAlphaPremultiplied(), null);
+
+        OverlayRaster overlay = new OverlayRaster(sourceRaster, patchRaster, region);
+        BufferedImage image = new BufferedImage(colorModel, overlay, colorModel.isAlphaPremultiplied(), null);
+        return new CopyOnWriteImage(image, patch, region, ImageCache.sizeOf(patch));
+    }
+
+    /**
+     * 包装一张调用方独占的图像，无需复制
+     */
+    public static CopyOnWriteImage owned(BufferedImage image) {
+        return owned(image, 0);
+    }
+
+    /**
+     * 包装一张调用方独占的图像，该图像是调用方复制（例如转换像素类型）得到的
+     *
+     * @param bytesCopied 生成该图像时复制的像素字节数
+     */
+    public static CopyOnWriteImage owned(BufferedImage image, long bytesCopied) {
+        return new CopyOnWriteImage(image, image, new Rectangle(0, 0, image.getWidth(), image.getHeight()),
+                bytesCopied);
+    }
+
+    /**
+     * 获取可以修改的补丁图像，补丁的左上角位于整张图片的 getPatchBounds() 处
+     * 对补丁的修改会反映到 getImage() 中
+     *
+     * @return 补丁图像，没有需要修改的区域时返回null
+     */
+    public BufferedImage getPatch() {
+        return patch;
+    }
+
+    /**
+     * @return 补丁在整张图片中的区域（已裁剪到图片范围内）
+     */
+    public Rectangle getPatchBounds() {
+        return new Rectangle(dirty);
+    }
+
+    /**
+     * @return 合成后的图像，只读
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return 合成时复制的像素字节数
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    private static boolean isSupported(WritableRaster raster) {
+        if (raster.getParent() != null || raster.getMinX() != 0 || raster.getMinY() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return false;
+        }
+        DataBuffer buffer = raster.getDataBuffer();
+        if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0) {
+            return false;
+        }
+        SampleModel sampleModel = raster.getSampleModel();
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            return true;
+        }
+        if (sampleModel instanceof PixelInterleavedSampleModel) {
+            // 补丁使用 createCompatibleSampleModel 创建，只有最小偏移为0时两者的像素布局才完全相同
+            return Arrays.stream(((PixelInterleavedSampleModel) sampleModel).getBandOffsets()).min().orElse(0) == 0;
+        }
+        return false;
+    }
+
+    /**
+     * 叠加栅格：补丁区域内的像素来自补丁，其余来自源图
+     * 编码器常用的按行读取方法（createChild、getDataElements）走快速路径，
+     * 其它通用访问经由 OverlayDataBuffer 按元素路由，结果同样正确
+     */
+    private static class OverlayRaster extends WritableRaster {
+        private final WritableRaster source;
+        private final WritableRaster patch;
+        private final Rectangle region;
+
+        OverlayRaster(WritableRaster source, WritableRaster patch, Rectangle region) {
+            super(source.getSampleModel(), new OverlayDataBuffer(source, patch, region), new Point(0, 0));
+            this.source = source;
+            this.patch = patch;
+            this.region = region;
+        }
+
+        @Override
+        public Raster createChild(int parentX, int parentY, int width, int height,
+                                  int childMinX, int childMinY, int[] bandList) {
+            if (!region.intersects(parentX, parentY, width, height)) {
+                return source.createChild(parentX, parentY, width, height, childMinX, childMinY, bandList);
+            }
+            // 与补丁相交时只复制请求的这一块（编码器每次只请求一行）
+            WritableRaster copy = source.createCompatibleWritableRaster(parentX, parentY, width, height);
+            copy.setDataElements(parentX, parentY, width, height,
+                    getDataElements(parentX, parentY, width, height, null));
+            return copy.createChild(parentX, parentY, width, height, childMinX, childMinY, bandList);
+        }
+
+        @Override
+        public WritableRaster createWritableChild(int parentX, int parentY, int width, int height,
+                                                  int childMinX, int childMinY, int[] bandList) {
+            throw new UnsupportedOperationException("写时复制图像是只读的");
+        }
+
+        @Override
+        public Object getDataElements(int x, int y, Object outData) {
+            if (region.contains(x, y)) {
+                return patch.getDataElements(x - region.x, y - region.y, outData);
+            }
+            return source.getDataElements(x, y, outData);
+        }
+
+        @Override
+        public Object getDataElements(int x, int y, int w, int h, Object outData) {
+            outData = source.getDataElements(x, y, w, h, outData);
+            Rectangle overlap = region.intersection(new Rectangle(x, y, w, h));
+            if (overlap.isEmpty()) {
+                return outData;
+            }
+
+            // 用补丁中的像素覆盖相交部分
+            int elements = getNumDataElements();
+            Object row = null;
+            for (int rowY = overlap.y; rowY < overlap.y + overlap.height; rowY++) {
+                row = patch.getDataElements(overlap.x - region.x, rowY - region.y, overlap.width, 1, row);
+                int offset = ((rowY - y) * w + (overlap.x - x)) * elements;
+                System.arraycopy(row, 0, outData, offset, overlap.width * elements);
+            }
+            return outData;
+        }
+    }
+
+    /**
+     * 按数据元素路由的数据缓冲区，供不走快速路径的通用像素访问使用
+     */
+    private static class OverlayDataBuffer extends DataBuffer {
+        private final DataBuffer source;
+        private final DataBuffer patch;
+        private final Rectangle region;
+        private final int scanlineStride;
+        private final int pixelStride;
+        private final int patchScanlineStride;
+
+        OverlayDataBuffer(WritableRaster source, WritableRaster patch, Rectangle region) {
+            super(source.getDataBuffer().getDataType(), source.getDataBuffer().getSize());
+            this.source = source.getDataBuffer();
+            this.patch = patch.getDataBuffer();
+            this.region = region;
+            SampleModel sampleModel = source.getSampleModel();
+            if (sampleModel instanceof SinglePixelPackedSampleModel) {
+                this.scanlineStride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+                this.pixelStride = 1;
+                this.patchScanlineStride = ((SinglePixelPackedSampleModel) patch.getSampleModel()).getScanlineStride();
+            } else {
+                this.scanlineStride = ((ComponentSampleModel) sampleModel).getScanlineStride();
+                this.pixelStride = ((ComponentSampleModel) sampleModel).getPixelStride();
+                this.patchScanlineStride = ((ComponentSampleModel) patch.getSampleModel()).getScanlineStride();
+            }
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int y = i / scanlineStride;
+            int offsetInRow = i - y * scanlineStride;
+            int x = offsetInRow / pixelStride;
+            if (region.contains(x, y)) {
+                int element = offsetInRow - x * pixelStride;
+                return patch.getElem((y - region.y) * patchScanlineStride + (x - region.x) * pixelStride + element);
+            }
+            return source.getElem(i);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("写时复制图像是只读的");
+        }
+    }
+}
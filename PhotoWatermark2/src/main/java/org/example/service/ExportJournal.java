@@ -0,0 +1,314 @@
+package org.example.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 导出日志，同时作为增量导出的索引
+ * 保存在输出文件夹中，只追加不修改，每行一条JSON记录一个已完成的输出：
+ * 源文件路径、大小和修改时间，输出文件（相对于输出文件夹的路径）和大小，以及导出时的配置指纹（见 ConfigFingerprint）。
+ * 导出被中断后重新导出，或者以后再次导出同一批图片时，源文件、输出文件和有效配置都没有变化的图片
+ * 按路径在内存索引中查找，每张 O(1) 即可跳过，只有指纹变化的图片才重新生成。
+ * <p>
+ * 同一源图片重新导出后追加新的记录，旧记录作废；作废的行超过有效记录数时，
+ * 关闭日志时把有效记录重写为新的日志文件（临时文件加原子重命名），日志大小与图片数量成正比。
+ * <p>
+ * 记录先写入缓冲区，每 SYNC_BATCH 条或每 SYNC_INTERVAL_NANOS 一次性写入并 fsync，导出流水线空闲时也由导出方调用 sync，
+ * 崩溃时最多丢失最后一批记录，这些图片下次会重新导出（输出文件通过临时文件和原子重命名写入，重新导出是安全的）。
+ * 崩溃时写了一半的最后一行在下次打开时被截掉，之后的记录从新的一行开始；
+ * 崩溃时输出文件夹中留下的临时文件（见 WatermarkService.write）也在打开时删除
+ */
+public class ExportJournal implements AutoCloseable {
+    /**
+     * 日志文件名
+     */
+    public static final String FILE_NAME = ".watermark-export.journal";
+
+    private static final int SYNC_BATCH = 64;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Path path;
+    private final String fingerprint;
+    // 源文件绝对路径 -> 最近一次完成的输出
+    private final Map<String, Entry> completed = new HashMap<>();
+    // 日志文件中的行数，包括作废的记录
+    private int lineCount;
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingCount;
+    private long lastSyncNanos = System.nanoTime();
+    private FileChannel channel;
+
+    private ExportJournal(Path path, String fingerprint) {
+        this.path = path;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 打开输出文件夹中的日志，读取已有的记录
+     *
+     * @param outputFolder 输出文件夹
+     * @param fingerprint  本次导出的配置指纹，指纹不同的记录视为需要重新导出
+     */
+    public static ExportJournal open(File outputFolder, String fingerprint) throws IOException {
+        ExportJournal journal = new ExportJournal(outputFolder.toPath().resolve(FILE_NAME), fingerprint);
+        deleteStaleTempFiles(outputFolder.toPath());
+        // 先截掉写了一半的最后一行再读取，否则恰好是完整JSON的半行会被当作有效记录读入
+        journal.truncatePartialLine();
+        journal.load();
+        journal.channel = FileChannel.open(journal.path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return journal;
+    }
+
+    /**
+     * 删除输出文件夹（包括子文件夹）中上次导出崩溃时留下的临时文件
+     * 临时文件名带随机部分，写出时不会再用到旧文件，只能在这里统一清理；删除失败只影响磁盘占用
+     */
+    private static void deleteStaleTempFiles(Path outputFolder) throws IOException {
+        if (!Files.isDirectory(outputFolder)) {
+            return;
+        }
+        Files.walkFileTree(outputFolder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && WatermarkService.isTempFile(file.getFileName().toString())) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        System.err.println("删除临时文件失败: " + file + " - " + e.getMessage());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 崩溃时写了一半的最后一行没有换行符，追加的记录会接在它后面而一起作废，
+     * 因此截断到最后一个换行符之后
+     */
+    private void truncatePartialLine() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            long end = size;
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            long validLength = 0;
+            search:
+            while (end > 0) {
+                int length = (int) Math.min(buffer.capacity(), end);
+                long position = end - length;
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining()) {
+                    if (file.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        validLength = position + i + 1;
+                        break search;
+                    }
+                }
+                end = position;
+            }
+            if (validLength < size) {
+                file.truncate(validLength);
+                file.force(false);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    completed.put(entry.source, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断源图片是否已经以相同的配置导出完成
+     * 源文件的大小和修改时间必须与记录一致，输出文件必须仍然存在且大小一致
+     *
+     * @param source     源图片
+     * @param outputFile 本次导出的输出文件
+     */
+    public synchronized boolean isCompleted(File source, File outputFile) {
+        Entry entry = completed.get(source.getAbsolutePath());
+        return entry != null
+                && entry.fingerprint.equals(fingerprint)
+                && entry.output.equals(outputName(outputFile))
+                && entry.sourceLength == source.length()
+                && entry.sourceLastModified == source.lastModified()
+                && entry.outputLength == outputFile.length();
+    }
+
+    /**
+     * 记录一个已完成的输出，按批写入并同步到磁盘
+     *
+     * @param source     源图片
+     * @param outputFile 已完整写出的输出文件
+     */
+    public synchronized void record(File source, File outputFile) throws IOException {
+        Entry entry = new Entry(source.getAbsolutePath(), source.length(), source.lastModified(),
+                outputName(outputFile), outputFile.length(), fingerprint);
+        completed.put(entry.source, entry);
+        pending.append(entry.toJson()).append('\n');
+        pendingCount++;
+        lineCount++;
+        if (pendingCount >= SYNC_BATCH || System.nanoTime() - lastSyncNanos >= SYNC_INTERVAL_NANOS) {
+            sync();
+        }
+    }
+
+    /**
+     * @return 输出文件相对于输出文件夹的路径，输出文件夹顶层的文件就是文件名
+     */
+    private String outputName(File outputFile) {
+        return path.toAbsolutePath().getParent().relativize(outputFile.toPath().toAbsolutePath()).toString();
+    }
+
+    /**
+     * 写入缓冲的记录并 fsync
+     */
+    public synchronized void sync() throws IOException {
+        // 导出被中断时仍在运行的任务可能在日志关闭后才完成，这些记录被丢弃，下次重新导出
+        if (channel != null && pendingCount > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            pending.setLength(0);
+            pendingCount = 0;
+        }
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * 写入剩余的记录并关闭日志，日志文件保留给下次导出使用；作废的记录过多时压缩日志
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        if (lineCount > 2 * completed.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * 只保留每个源图片最近的一条记录，输出文件已被删除的记录一并去掉
+     */
+    private void compact() throws IOException {
+        completed.values().removeIf(entry -> !Files.exists(path.resolveSibling(entry.output)));
+        StringBuilder content = new StringBuilder();
+        for (Entry entry : completed.values()) {
+            content.append(entry.toJson()).append('\n');
+        }
+        Path tempPath = path.resolveSibling(FILE_NAME + ".part");
+        try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+            output.force(false);
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        lineCount = completed.size();
+    }
+
+    /**
+     * 日志记录
+     */
+    private static class Entry {
+        private final String source;
+        private final long sourceLength;
+        private final long sourceLastModified;
+        private final String output;
+        private final long outputLength;
+        private final String fingerprint;
+
+        Entry(String source, long sourceLength, long sourceLastModified, String output, long outputLength,
+              String fingerprint) {
+            this.source = source;
+            this.sourceLength = sourceLength;
+            this.sourceLastModified = sourceLastModified;
+            this.output = output;
+            this.outputLength = outputLength;
+            this.fingerprint = fingerprint;
+        }
+
+        String toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("source", source);
+            json.addProperty("sourceLength", sourceLength);
+            json.addProperty("sourceLastModified", sourceLastModified);
+            json.addProperty("output", output);
+            json.addProperty("outputLength", outputLength);
+            json.addProperty("fingerprint", fingerprint);
+            return json.toString();
+        }
+
+        /**
+         * @return 解析得到的记录，不完整或损坏的行返回null
+         */
+        static Entry parse(String line) {
+            try {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                return new Entry(json.get("source").getAsString(), json.get("sourceLength").getAsLong(),
+                        json.get("sourceLastModified").getAsLong(), json.get("output").getAsString(),
+                        json.get("outputLength").getAsLong(), json.get("fingerprint").getAsString());
+            } catch (JsonParseException | IllegalStateException | NullPointerException
+                     | UnsupportedOperationException e) {
+                return null;
+            }
+        }
+    }
+}
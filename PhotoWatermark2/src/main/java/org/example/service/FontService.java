@@ -0,0 +1,133 @@
+package org.example.service;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 字体解析服务类
+ * 系统字体枚举在字体较多的Linux主机上可能耗时数百毫秒，因此只在启动时于后台线程中枚举一次；
+ * 解析结果按（字体名称、样式、字号、水印文本）缓存，并根据实际的水印文本检查字体能否显示全部字符
+ */
+public class FontService {
+    private static final int MAX_CACHED_FONTS = 256;
+
+    // 常见的支持中文的字体列表，用户指定的字体无法显示水印文本时依次尝试
+    private static final String[] FALLBACK_FONT_NAMES = {
+        "Microsoft YaHei", "SimHei", "KaiTi", "SimSun", "FangSong",
+        "YouYuan", "STHeiti", "STSong", "STKaiti", "STFangsong",
+        "PingFang SC", "Hiragino Sans GB", "Source Han Sans CN",
+        "Noto Sans CJK SC", "WenQuanYi Micro Hei", "WenQuanYi Zen Hei"
+    };
+
+    private static final FontService INSTANCE = new FontService();
+
+    private final CompletableFuture<Set<String>> familyIndex;
+    private final Map<String, Font> resolvedFonts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Font> eldest) {
+            return size() > MAX_CACHED_FONTS;
+        }
+    };
+
+    private FontService() {
+        this.familyIndex = CompletableFuture.supplyAsync(FontService::loadFamilyNames, runnable -> {
+            Thread thread = new Thread(runnable, "font-index");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * 获取字体服务实例，首次调用时在后台开始枚举系统字体
+     */
+    public static FontService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 在启动时调用，提前开始后台枚举系统字体
+     */
+    public static void preload() {
+        getInstance();
+    }
+
+    /**
+     * 解析能够显示水印文本的字体
+     * 优先使用用户指定的字体；如果它无法显示全部字符，依次尝试系统中已安装的中文字体，
+     * 最后使用系统默认字体
+     *
+     * @param fontName 字体名称
+     * @param style    字体样式
+     * @param size     字体大小
+     * @param text     水印文本
+     * @return 解析得到的字体
+     */
+    public Font resolve(String fontName, int style, int size, String text) {
+        String key = fontName + '|' + style + '|' + size + '|' + text;
+        synchronized (resolvedFonts) {
+            Font cached = resolvedFonts.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Font font = findFont(fontName, style, size, text);
+        synchronized (resolvedFonts) {
+            resolvedFonts.put(key, font);
+        }
+        return font;
+    }
+
+    /**
+     * @param family 字体族名称
+     * @return 系统中是否安装了该字体
+     */
+    public boolean isAvailable(String family) {
+        return familyIndex.join().contains(family);
+    }
+
+    private Font findFont(String fontName, int style, int size, String text) {
+        // 首先尝试使用用户指定的字体
+        Font font = new Font(fontName, style, size);
+        if (canDisplay(font, text)) {
+            return font;
+        }
+
+        // 如果用户指定的字体无法显示，尝试使用系统中的中文字体
+        Set<String> availableFonts = familyIndex.join();
+        for (String fallbackName : FALLBACK_FONT_NAMES) {
+            if (availableFonts.contains(fallbackName)) {
+                font = new Font(fallbackName, style, size);
+                if (canDisplay(font, text)) {
+                    return font;
+                }
+            }
+        }
+
+        // 如果没有找到合适的字体，使用系统默认字体
+        font = new Font(Font.DIALOG, style, size);
+        if (canDisplay(font, text)) {
+            return font;
+        }
+
+        // 最后的备选方案
+        return new Font(Font.SANS_SERIF, style, size);
+    }
+
+    /**
+     * 检查字体能否显示文本中的全部字符
+     */
+    private static boolean canDisplay(Font font, String text) {
+        return font.canDisplayUpTo(text) == -1;
+    }
+
+    private static Set<String> loadFamilyNames() {
+        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        return new HashSet<>(Arrays.asList(ge.getAvailableFontFamilyNames()));
+    }
+}
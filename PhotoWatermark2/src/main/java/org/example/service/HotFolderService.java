@@ -0,0 +1,265 @@
+package org.example.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 热文件夹服务
+ * 通过 WatchService 监视文件夹，新放入或被修改的图片在大小和修改时间稳定 settleMillis 之后
+ * 才视为写入完成（避免处理写了一半的文件），每次检查中同时稳定的文件组成一个小批次交给导出。
+ * <p>
+ * 本类作为惰性输入交给 BatchExportService.export：迭代器在没有新文件时阻塞，
+ * 因此整个监视期间只有一次导出，线程池、导出日志和运行报告都只有一份，
+ * 启动时文件夹中已有的图片也会放入第一个批次，之前已导出的由导出日志跳过。
+ * 调用 close 后迭代结束，导出在处理完已提交的图片后返回
+ */
+public class HotFolderService implements Iterable<File>, AutoCloseable {
+    /**
+     * 默认的稳定等待时间（毫秒）
+     */
+    public static final long DEFAULT_SETTLE_MILLIS = 200;
+
+    // 检查待定文件的间隔，决定了稳定判断的精度
+    private static final long POLL_MILLIS = 50;
+    // 迭代结束标记
+    private static final List<File> END = Collections.emptyList();
+
+    private final Path folder;
+    private final long settleNanos;
+    private final WatchService watchService;
+    private final BlockingQueue<List<File>> batches = new LinkedBlockingQueue<>();
+    // 尚未稳定的文件，仅在监视线程中访问
+    private final Map<Path, Candidate> pending = new LinkedHashMap<>();
+    private final Consumer<List<File>> batchListener;
+    private final Thread watcher;
+    private volatile boolean closed;
+
+    /**
+     * @param folder       要监视的文件夹（只监视顶层文件）
+     * @param settleMillis 文件大小和修改时间保持不变多长时间后视为写入完成
+     */
+    public HotFolderService(File folder, long settleMillis) throws IOException {
+        this(folder, settleMillis, batch -> {
+        });
+    }
+
+    /**
+     * @param folder        要监视的文件夹（只监视顶层文件）
+     * @param settleMillis  文件大小和修改时间保持不变多长时间后视为写入完成
+     * @param batchListener 每个批次开始交给导出时在迭代线程中调用，例如显示进度
+     */
+    public HotFolderService(File folder, long settleMillis, Consumer<List<File>> batchListener) throws IOException {
+        if (!folder.isDirectory()) {
+            throw new IOException("监视的文件夹不存在: " + folder);
+        }
+        this.folder = folder.toPath();
+        this.settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.batchListener = batchListener;
+        this.watchService = this.folder.getFileSystem().newWatchService();
+        this.folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcher = new Thread(this::watch, "hot-folder-watcher");
+        this.watcher.setDaemon(true);
+    }
+
+    /**
+     * 开始监视，文件夹中已有的图片同样等待稳定后进入第一个批次
+     */
+    public void start() {
+        watcher.start();
+    }
+
+    /**
+     * 监视线程：收集文件事件，定期检查待定文件是否稳定
+     */
+    private void watch() {
+        try {
+            scanFolder();
+            while (!closed) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // 事件过多被丢弃时重新扫描整个文件夹，已导出的图片由导出日志跳过
+                            scanFolder();
+                        } else {
+                            offer(folder.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("监视的文件夹已不可访问: " + folder);
+                        break;
+                    }
+                }
+                dispatchSettled();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // close 时结束监视
+        } catch (IOException e) {
+            System.err.println("监视文件夹失败: " + folder + " - " + e.getMessage());
+        } finally {
+            batches.add(END);
+        }
+    }
+
+    private void scanFolder() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path path : stream) {
+                offer(path);
+            }
+        }
+    }
+
+    /**
+     * 把文件加入待定列表并记下当前的大小和修改时间，已在列表中的文件重新开始等待
+     */
+    private void offer(Path path) {
+        if (!isImageFile(path)) {
+            return;
+        }
+        Candidate candidate = pending.computeIfAbsent(path, p -> new Candidate());
+        candidate.changedAt = System.nanoTime();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            candidate.size = attributes.size();
+            candidate.lastModified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // 文件可能已被删除，检查时再处理
+        }
+    }
+
+    /**
+     * 检查待定文件，把已经稳定的文件作为一个批次交给导出
+     */
+    private void dispatchSettled() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<File> batch = new ArrayList<>();
+        Iterator<Map.Entry<Path, Candidate>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Candidate> entry = iterator.next();
+            Candidate candidate = entry.getValue();
+            if (now - candidate.changedAt < settleNanos) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (IOException e) {
+                // 文件已被删除或移走
+                iterator.remove();
+                continue;
+            }
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (size != candidate.size || lastModified != candidate.lastModified || size == 0) {
+                // 仍在写入，继续等待
+                candidate.size = size;
+                candidate.lastModified = lastModified;
+                candidate.changedAt = now;
+                continue;
+            }
+            iterator.remove();
+            batch.add(entry.getKey().toFile());
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+    }
+
+    /**
+     * 停止监视，迭代器在交出已排队的批次后结束
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    /**
+     * 按批次顺序返回已稳定的文件，没有新文件时阻塞，调用 close 后结束
+     * 只能由一个线程迭代
+     */
+    @Override
+    public Iterator<File> iterator() {
+        return new Iterator<>() {
+            private Iterator<File> current = Collections.emptyIterator();
+            private boolean ended;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (ended) {
+                        return false;
+                    }
+                    try {
+                        List<File> batch = batches.take();
+                        if (batch == END) {
+                            ended = true;
+                        } else {
+                            batchListener.accept(batch);
+                            current = batch.iterator();
+                        }
+                    } catch (InterruptedException e) {
+                        // 保留中断状态，由导出线程随后的阻塞操作抛出
+                        Thread.currentThread().interrupt();
+                        ended = true;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public File next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * 检查文件是否为图片文件，隐藏文件（例如导出的临时文件）除外
+     */
+    private static boolean isImageFile(Path path) {
+        String fileName = path.getFileName().toString().toLowerCase();
+        if (fileName.startsWith(".")) {
+            return false;
+        }
+        return fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") ||
+                fileName.endsWith(".png") || fileName.endsWith(".bmp") ||
+                fileName.endsWith(".tiff") || fileName.endsWith(".tif");
+    }
+
+    /**
+     * 等待稳定的文件
+     */
+    private static class Candidate {
+        private long size = -1;
+        private long lastModified = -1;
+        private long changedAt;
+    }
+}
@@ -0,0 +1,298 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 解码图像缓存类
+ * 按文件路径缓存解码后的完整图像，并以修改时间和文件大小校验缓存是否过期。
+ * 缓存总字节数受预算限制，超出时按最近最少使用（LRU）顺序淘汰。
+ * 读取时返回缓存图像的副本（copy-on-read），调用方对返回图像的修改不会影响缓存中的原图
+ */
+public class ImageCache {
+    /**
+     * 可通过该系统属性指定默认缓存的字节预算
+     */
+    public static final String BUDGET_PROPERTY = "photowatermark.imageCache.maxBytes";
+
+    private static final ImageCache DEFAULT = new ImageCache(defaultBudget());
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budgetBytes;
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param budgetBytes 缓存字节预算
+     */
+    public ImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * 获取预览和导出共用的默认缓存
+     */
+    public static ImageCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取图片的完整图像
+     * 命中缓存时返回缓存图像的副本，未命中时从文件解码并放入缓存
+     *
+     * @param file 图片文件
+     * @return 图像副本，调用方可以任意修改；解码失败时返回null
+     */
+    public BufferedImage get(File file) throws IOException {
+        // 缓存中保留的是解码得到的原图，返回给调用方的始终是副本
+        return read(file, ImageCache::copy);
+    }
+
+    /**
+     * 以只读方式访问缓存中的原图，不产生副本
+     * 适用于只需要读取像素的场景（例如生成缩小的预览图），reader 绝不能修改传入的图像
+     *
+     * @param file   图片文件
+     * @param reader 读取函数
+     * @return reader 的返回值；解码失败时返回null
+     */
+    public <T> T read(File file, Function<BufferedImage, T> reader) throws IOException {
+        return read(file, null, StageMetrics.getDefault(), true, reader);
+    }
+
+    /**
+     * 以只读方式访问缓存中的原图，未命中时从已读入内存的文件内容解码
+     * 用于导出流水线：文件读取在I/O线程中完成，计算线程只做解码
+     *
+     * @param file    图片文件（缓存的键）
+     * @param encoded 文件的完整内容，为null时从文件解码
+     * @param metrics 记录解码耗时的统计（未命中时）
+     * @param store   未命中时是否把解码得到的图像放入缓存；为false时图像只在 reader 中使用，随后即可回收
+     * @param reader  读取函数
+     * @return reader 的返回值；解码失败时返回null
+     */
+    public <T> T read(File file, byte[] encoded, StageMetrics metrics, boolean store,
+                      Function<BufferedImage, T> reader) throws IOException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        BufferedImage image = null;
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                if (entry.lastModified == lastModified && entry.length == length) {
+                    hits++;
+                    image = entry.image;
+                } else {
+                    // 文件已被修改，旧图像作废
+                    remove(path);
+                }
+            }
+            if (image == null) {
+                misses++;
+            }
+        }
+
+        if (image == null) {
+            // 在锁外解码，避免阻塞其它线程读取缓存
+            long start = System.nanoTime();
+            image = encoded != null ? ImageIO.read(new ByteArrayInputStream(encoded)) : ImageIO.read(file);
+            if (image == null) {
+                return null;
+            }
+            metrics.record(StageMetrics.Stage.DECODE, System.nanoTime() - start);
+            metrics.addBytesRead(length);
+            if (store) {
+                synchronized (this) {
+                    long bytes = sizeOf(image);
+                    if (bytes <= budgetBytes && !entries.containsKey(path)) {
+                        entries.put(path, new Entry(image, lastModified, length, bytes));
+                        currentBytes += bytes;
+                        evictToBudget();
+                    }
+                }
+            }
+        }
+        return reader.apply(image);
+    }
+
+    /**
+     * 获取图片数据对应的完整图像，并用解码得到的实际尺寸更新图片数据
+     * 每次调用都返回一份独立的副本，调用方可以直接在上面绘制而不会影响缓存中的原图
+     *
+     * @param imageData 图片数据
+     * @return 完整图像，没有文件或解码失败时返回null
+     */
+    public BufferedImage getFullImage(ImageData imageData) {
+        if (imageData.getFile() == null) {
+            return null;
+        }
+        try {
+            return readFullImage(imageData, null, StageMetrics.getDefault(), true, ImageCache::copy);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 以只读方式访问图片数据对应的完整图像，并用解码得到的实际尺寸更新图片数据
+     * reader 绝不能修改传入的图像，需要修改时使用 getFullImage 或写时复制（CopyOnWriteImage）
+     *
+     * @param imageData 图片数据
+     * @param encoded   文件的完整内容，为null时从文件解码
+     * @param metrics   记录解码耗时的统计（未命中时）
+     * @param store     未命中时是否把解码得到的图像放入缓存
+     * @param reader    读取函数
+     * @return reader 的返回值；没有文件或解码失败时返回null
+     */
+    public <T> T readFullImage(ImageData imageData, byte[] encoded, StageMetrics metrics, boolean store,
+                               Function<BufferedImage, T> reader) throws IOException {
+        if (imageData.getFile() == null) {
+            return null;
+        }
+        return read(imageData.getFile(), encoded, metrics, store, fullImage -> {
+            imageData.setSize(fullImage.getWidth(), fullImage.getHeight());
+            return reader.apply(fullImage);
+        });
+    }
+
+    /**
+     * 主动释放图片数据对应的完整图像，下次访问时重新解码
+     */
+    public void release(ImageData imageData) {
+        if (imageData.getFile() != null) {
+            invalidate(imageData.getFile());
+        }
+    }
+
+    /**
+     * 判断缓存中是否有文件当前版本的图像
+     */
+    public synchronized boolean contains(File file) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        return entry != null && entry.lastModified == file.lastModified() && entry.length == file.length();
+    }
+
+    /**
+     * 移除指定文件的缓存
+     */
+    public synchronized void invalidate(File file) {
+        remove(file.getAbsolutePath());
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * 修改字节预算，必要时立即淘汰
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ImageCache[%d 张, %.1f/%.1f MB, 命中 %d, 未命中 %d, 淘汰 %d]",
+                entries.size(), currentBytes / 1048576.0, budgetBytes / 1048576.0, hits, misses, evictions);
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (currentBytes > budgetBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            currentBytes -= eldest.bytes;
+            evictions++;
+        }
+    }
+
+    private void remove(String path) {
+        Entry entry = entries.remove(path);
+        if (entry != null) {
+            currentBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * 估算图像像素数据占用的字节数
+     */
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+
+    /**
+     * 深拷贝图像，保持原有的颜色模型和像素布局
+     */
+    static BufferedImage copy(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel, image.copyData(null), colorModel.isAlphaPremultiplied(), null);
+    }
+
+    private static long defaultBudget() {
+        Long configured = Long.getLong(BUDGET_PROPERTY);
+        if (configured != null) {
+            return configured;
+        }
+        // 默认使用最大堆内存的四分之一
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+        private final BufferedImage image;
+        private final long lastModified;
+        private final long length;
+        private final long bytes;
+
+        Entry(BufferedImage image, long lastModified, long length, long bytes) {
+            this.image = image;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 图片导入服务
+ * 递归遍历选择或拖入的文件夹（Files.walkFileTree，不跟随符号链接，跳过隐藏的文件和文件夹），
+ * 按文件开头的魔数而不是扩展名识别格式，尺寸直接从文件头解析：
+ * PNG 取 IHDR，BMP 取信息头，JPEG 沿标记段跳到 SOF，TIFF 取第一个 IFD，每个文件只读几十到几百字节；
+ * 解析失败的文件交给 ImageIO 只读取文件头，仍然无法读取尺寸的文件不导入。
+ * <p>
+ * 遍历在调用线程中进行，文件头探测在虚拟线程中并行执行（同时打开的文件数受 PROBE_CONCURRENCY 限制），
+ * 结果按遍历顺序分批交给调用方。导入时不解码像素，缩略图在列表显示时另行生成
+ */
+public class ImageImportService {
+    /**
+     * 默认每批交给调用方的图片数
+     */
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    // 同时探测的文件数
+    private static final int PROBE_CONCURRENCY = 64;
+    // 距上次交付超过该时间时即使不满一批也先交给调用方，让界面及时显示
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 识别格式和解析 PNG / BMP 尺寸所需的文件头长度
+    private static final int HEADER_BYTES = 32;
+    // JPEG 查找 SOF 时最多跳过的标记段数
+    private static final int MAX_JPEG_SEGMENTS = 256;
+    // TIFF 的 IFD 中最多读取的条目数，宽高标签编号很小，总是排在前面
+    private static final int MAX_TIFF_ENTRIES = 32;
+
+    /**
+     * 按魔数识别的图片格式
+     */
+    public enum Format {
+        JPEG, PNG, BMP, TIFF
+    }
+
+    private final int batchSize;
+
+    public ImageImportService() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize 每批交给调用方的图片数
+     */
+    public ImageImportService(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 导入文件和文件夹：文件夹递归遍历，文件按魔数识别，不是图片的文件被忽略
+     *
+     * @param roots         选择或拖入的文件和文件夹，直接选择的隐藏文件同样导入
+     * @param batchConsumer 在调用线程中按遍历顺序接收识别出的图片
+     * @return 导入的图片数
+     */
+    public int importFiles(List<File> roots, Consumer<List<ImageData>> batchConsumer) throws InterruptedException {
+        try (Scan scan = new Scan(batchConsumer)) {
+            for (File root : roots) {
+                scan.walk(root.toPath());
+            }
+            scan.finish();
+            return scan.imported;
+        }
+    }
+
+    /**
+     * 一次导入的遍历状态，仅在调用线程中访问
+     */
+    private class Scan implements AutoCloseable {
+        private final Consumer<List<ImageData>> batchConsumer;
+        private final ExecutorService probeExecutor =
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("import-probe-", 1).factory());
+        private final Semaphore probeSlots = new Semaphore(PROBE_CONCURRENCY);
+        // 按遍历顺序排列的探测任务
+        private final Deque<Future<ImageData>> probes = new ArrayDeque<>();
+        private List<ImageData> batch = new ArrayList<>();
+        private long lastFlushNanos = System.nanoTime();
+        private int imported;
+
+        Scan(Consumer<List<ImageData>> batchConsumer) {
+            this.batchConsumer = batchConsumer;
+        }
+
+        void walk(Path root) throws InterruptedException {
+            try {
+                Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+                        new SimpleFileVisitor<>() {
+                            @Override
+                            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                                return !dir.equals(root) && isHidden(dir)
+                                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                if (!attrs.isRegularFile() || attrs.size() == 0
+                                        || (!file.equals(root) && isHidden(file))) {
+                                    return FileVisitResult.CONTINUE;
+                                }
+                                try {
+                                    submit(file);
+                                    return FileVisitResult.CONTINUE;
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    return FileVisitResult.TERMINATE;
+                                }
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                                System.err.println("无法访问: " + file + " - " + exc.getMessage());
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+            } catch (IOException e) {
+                System.err.println("遍历文件夹失败: " + root + " - " + e.getMessage());
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException("导入已取消");
+            }
+        }
+
+        private void submit(Path file) throws InterruptedException {
+            probeSlots.acquire();
+            probes.add(probeExecutor.submit(() -> {
+                try {
+                    return probe(file);
+                } finally {
+                    probeSlots.release();
+                }
+            }));
+            collect(false);
+        }
+
+        /**
+         * 按顺序收集已完成的探测结果，满一批或超过交付间隔时交给调用方
+         *
+         * @param waitAll 是否等待全部任务完成
+         */
+        private void collect(boolean waitAll) throws InterruptedException {
+            while (!probes.isEmpty() && (waitAll || probes.peek().isDone())) {
+                ImageData imageData;
+                try {
+                    imageData = probes.poll().get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    continue;
+                }
+                if (imageData != null) {
+                    batch.add(imageData);
+                    if (batch.size() >= batchSize || System.nanoTime() - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                        flush();
+                    }
+                }
+            }
+        }
+
+        void finish() throws InterruptedException {
+            collect(true);
+            flush();
+        }
+
+        private void flush() {
+            lastFlushNanos = System.nanoTime();
+            if (batch.isEmpty()) {
+                return;
+            }
+            imported += batch.size();
+            batchConsumer.accept(batch);
+            batch = new ArrayList<>();
+        }
+
+        @Override
+        public void close() {
+            // 取消时丢弃尚未开始的探测，已开始的很快结束
+            for (Future<ImageData> future : probes) {
+                future.cancel(true);
+            }
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 探测文件：按魔数识别格式并读取尺寸
+     *
+     * @param path 文件路径
+     * @return 图片数据，不是支持的图片格式或无法读取时返回null
+     */
+    static ImageData probe(Path path) {
+        Format format;
+        Dimension size = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            read(channel, header, 0);
+            header.flip();
+            format = detectFormat(header);
+            if (format == null) {
+                return null;
+            }
+            switch (format) {
+                case PNG:
+                    size = pngSize(header);
+                    break;
+                case BMP:
+                    size = bmpSize(header);
+                    break;
+                case JPEG:
+                    size = jpegSize(channel);
+                    break;
+                case TIFF:
+                    size = tiffSize(channel, header);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        File file = path.toFile();
+        if (size == null) {
+            size = ImageData.readDimensions(file);
+        }
+        // 魔数碰巧相符但两种方式都读不出尺寸的文件不是可用的图片，不导入
+        return size != null ? new ImageData(file, size.width, size.height) : null;
+    }
+
+    /**
+     * 根据文件开头的魔数识别图片格式
+     *
+     * @param header 文件开头的字节，从 position 到 limit
+     * @return 图片格式，不是支持的格式时返回null
+     */
+    public static Format detectFormat(ByteBuffer header) {
+        int start = header.position();
+        int length = header.remaining();
+        if (length >= 3 && (header.get(start) & 0xFF) == 0xFF && (header.get(start + 1) & 0xFF) == 0xD8
+                && (header.get(start + 2) & 0xFF) == 0xFF) {
+            return Format.JPEG;
+        }
+        if (length >= 8 && header.getLong(start) == 0x89504E470D0A1A0AL) {
+            return Format.PNG;
+        }
+        if (length >= 4) {
+            int magic = header.getInt(start);
+            if (magic == 0x49492A00 || magic == 0x4D4D002A) {
+                return Format.TIFF;
+            }
+        }
+        // "BM" 只有两个字节，很多文本文件也以此开头，因此还要求信息头长度是已知的取值
+        if (length >= 18 && header.get(start) == 'B' && header.get(start + 1) == 'M'
+                && isBmpInfoSize(header.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(start + 14))) {
+            return Format.BMP;
+        }
+        return null;
+    }
+
+    /**
+     * BMP 信息头长度：OS/2 1.x (12)、BITMAPINFOHEADER (40)、V2/V3 (52/56)、V4 (108)、V5 (124)
+     */
+    private static boolean isBmpInfoSize(int infoSize) {
+        return infoSize == 12 || infoSize == 40 || infoSize == 52 || infoSize == 56 || infoSize == 108
+                || infoSize == 124;
+    }
+
+    /**
+     * IHDR 紧跟在签名之后：长度(4) 类型(4) 宽(4) 高(4)，大端
+     */
+    private static Dimension pngSize(ByteBuffer header) {
+        if (header.remaining() < 24 || header.getInt(12) != 0x49484452) {
+            return null;
+        }
+        return validSize(header.getInt(16), header.getInt(20));
+    }
+
+    /**
+     * 文件头(14字节)之后是信息头（长度已由 detectFormat 检查），OS/2 的 12 字节信息头使用16位尺寸，其余使用32位，小端；
+     * 高度为负表示自上而下存储
+     */
+    private static Dimension bmpSize(ByteBuffer header) {
+        if (header.remaining() < 26) {
+            return null;
+        }
+        ByteBuffer little = header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int infoSize = little.getInt(14);
+        if (infoSize == 12) {
+            return validSize(little.getShort(18) & 0xFFFF, little.getShort(20) & 0xFFFF);
+        }
+        return validSize(little.getInt(18), Math.abs(little.getInt(22)));
+    }
+
+    /**
+     * 从 SOI 之后逐个跳过标记段直到帧头 SOFn：标记(2) 长度(2) 精度(1) 高(2) 宽(2)，大端。
+     * 只读取每个标记段的开头，EXIF 等大段不会被读入
+     */
+    private static Dimension jpegSize(FileChannel channel) throws IOException {
+        ByteBuffer segment = ByteBuffer.allocate(9);
+        long position = 2;
+        for (int i = 0; i < MAX_JPEG_SEGMENTS; i++) {
+            segment.clear();
+            int read = read(channel, segment, position);
+            if (read < 4 || (segment.get(0) & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = segment.get(1) & 0xFF;
+            if (marker == 0xFF) {
+                // 填充字节
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // 没有长度字段的标记
+                position += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                // 在帧头之前遇到图像结束或扫描开始，交给 ImageIO
+                return null;
+            }
+            if (isStartOfFrame(marker)) {
+                return read < 9 ? null : validSize(segment.getShort(7) & 0xFFFF, segment.getShort(5) & 0xFFFF);
+            }
+            position += 2 + (segment.getShort(2) & 0xFFFF);
+        }
+        return null;
+    }
+
+    /**
+     * 文件头给出字节序和第一个 IFD 的偏移，IFD 由条目数(2)和12字节的条目组成：
+     * 标签(2) 类型(2) 数量(4) 值(4)，ImageWidth(256) 和 ImageLength(257) 的值为 SHORT 或 LONG
+     */
+    private static Dimension tiffSize(FileChannel channel, ByteBuffer header) throws IOException {
+        if (header.remaining() < 8) {
+            return null;
+        }
+        ByteOrder order = header.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        long offset = header.duplicate().order(order).getInt(4) & 0xFFFFFFFFL;
+        ByteBuffer ifd = ByteBuffer.allocate(2 + 12 * MAX_TIFF_ENTRIES).order(order);
+        int read = read(channel, ifd, offset);
+        if (read < 2) {
+            return null;
+        }
+        int entries = Math.min(ifd.getShort(0) & 0xFFFF, (read - 2) / 12);
+        int width = -1;
+        int height = -1;
+        for (int i = 0; i < entries; i++) {
+            int entry = 2 + 12 * i;
+            int tag = ifd.getShort(entry) & 0xFFFF;
+            int type = ifd.getShort(entry + 2) & 0xFFFF;
+            int value = type == 3 ? ifd.getShort(entry + 8) & 0xFFFF : type == 4 ? ifd.getInt(entry + 8) : -1;
+            if (tag == 256) {
+                width = value;
+            } else if (tag == 257) {
+                height = value;
+            }
+        }
+        return validSize(width, height);
+    }
+
+    /**
+     * SOF0 - SOF15，其中 DHT(C4)、JPG(C8)、DAC(CC) 除外
+     */
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static Dimension validSize(int width, int height) {
+        // 高度为0的 JPEG 由 DNL 标记给出高度，交给 ImageIO
+        return width > 0 && height > 0 ? new Dimension(width, height) : null;
+    }
+
+    /**
+     * 从指定位置读取直到缓冲区填满或文件结束
+     *
+     * @return 读取的字节数
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 导出的内存预算
+ * 每张图片在读入文件内容前按文件头中的尺寸估算处理时需要的字节数（文件内容和像素），预算不足时等待其它图片释放。
+ * 小图片可以同时处理很多张，超大图片只能在预算空闲时处理，估算值超过整个预算的图片独占全部预算。
+ * 等待按先来先服务（公平信号量），大图片不会被源源不断的小图片饿死
+ */
+public class MemoryBudget {
+    /**
+     * 可通过该系统属性指定导出的内存预算（字节）
+     */
+    public static final String BUDGET_PROPERTY = "photowatermark.export.memoryBudget";
+
+    // 信号量的许可以KB为单位，避免超过 int 范围
+    private static final int UNIT = 1024;
+
+    private final long budgetBytes;
+    private final Semaphore permits;
+    private final AtomicLong admittedBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    /**
+     * @param budgetBytes 预算字节数
+     */
+    public MemoryBudget(long budgetBytes) {
+        if (budgetBytes < UNIT) {
+            throw new IllegalArgumentException("内存预算过小: " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.permits = new Semaphore(toPermits(budgetBytes), true);
+    }
+
+    /**
+     * 创建使用默认预算的实例：系统属性指定的值，否则为最大堆内存的一半
+     * （另外四分之一留给 ImageCache）
+     */
+    public static MemoryBudget createDefault() {
+        Long configured = Long.getLong(BUDGET_PROPERTY);
+        return new MemoryBudget(configured != null ? configured : Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * 申请内存，预算不足时阻塞
+     *
+     * @param bytes 估算的字节数，超过预算时按整个预算申请
+     * @return 实际申请的字节数，释放时原样传给 release
+     */
+    public long acquire(long bytes) throws InterruptedException {
+        long granted = Math.max(UNIT, Math.min(bytes, budgetBytes));
+        int count = toPermits(granted);
+        if (!permits.tryAcquire(count)) {
+            long start = System.nanoTime();
+            permits.acquire(count);
+            waitNanos.add(System.nanoTime() - start);
+            waits.increment();
+        }
+        long admitted = admittedBytes.addAndGet(granted);
+        peakBytes.accumulateAndGet(admitted, Math::max);
+        return granted;
+    }
+
+    /**
+     * 释放 acquire 申请的内存
+     */
+    public void release(long granted) {
+        admittedBytes.addAndGet(-granted);
+        permits.release(toPermits(granted));
+    }
+
+    /**
+     * 释放 acquire 申请的内存中不再需要的部分，只保留 keep 字节（向上取整到许可单位，不超过已申请的字节数）
+     *
+     * @param granted 已申请的字节数
+     * @param keep    需要继续保留的字节数
+     * @return 保留的字节数，之后释放时传给 release
+     */
+    public long shrink(long granted, long keep) {
+        long kept = Math.min(granted, (keep + UNIT - 1) / UNIT * UNIT);
+        if (kept < granted) {
+            release(granted - kept);
+        }
+        return kept;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return 同时申请的字节数的峰值
+     */
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    /**
+     * @return 因预算不足而等待的次数
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * @return 因预算不足而等待的总时间（纳秒）
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("峰值 %.0f / 预算 %.0f MB，等待 %d 次共 %.0f ms", peakBytes.get() / 1048576.0,
+                budgetBytes / 1048576.0, waits.sum(), waitNanos.sum() / 1e6);
+    }
+
+    private static int toPermits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, (bytes + UNIT - 1) / UNIT);
+    }
+}
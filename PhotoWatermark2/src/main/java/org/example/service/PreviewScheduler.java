@@ -0,0 +1,180 @@
+package org.example.service;
+
+import org.example.model.ImageData;
+import org.example.model.WatermarkConfig;
+
+import javax.swing.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预览调度类
+ * 在后台线程中渲染预览，只有最新的一次请求有效：
+ * 新请求到来时取消尚未开始的旧请求，渲染完成时如果已有更新的请求则直接丢弃结果，
+ * 事件调度线程（EDT）上只执行提交请求和设置图标这两个轻量操作
+ */
+public class PreviewScheduler {
+    private static final int DEFAULT_WIDTH = 400;
+    private static final int DEFAULT_HEIGHT = 300;
+
+    private final PreviewService previewService;
+    private final JLabel previewLabel;
+    private final ExecutorService executor;
+    private final AtomicLong latestRequest = new AtomicLong();
+    private final AtomicLong renderedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private Future<?> pending; // 仅在EDT上访问
+
+    // EDT耗时统计，仅在EDT上访问
+    private long edtSamples;
+    private long edtTotalNanos;
+    private long edtMaxNanos;
+
+    /**
+     * @param previewService 预览服务
+     * @param previewLabel   显示预览的标签
+     */
+    public PreviewScheduler(PreviewService previewService, JLabel previewLabel) {
+        this.previewService = previewService;
+        this.previewLabel = previewLabel;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "preview-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 请求渲染预览，必须在EDT上调用
+     *
+     * @param imageData 原始图像数据
+     * @param config    水印配置，会复制一份快照交给后台线程
+     */
+    public void schedule(ImageData imageData, WatermarkConfig config) {
+        long startNanos = System.nanoTime();
+        long requestId = latestRequest.incrementAndGet();
+        cancelPending();
+
+        int width = previewLabel.getWidth();
+        int height = previewLabel.getHeight();
+        if (width <= 0 || height <= 0) {
+            width = DEFAULT_WIDTH;
+            height = DEFAULT_HEIGHT;
+        }
+        int maxWidth = width;
+        int maxHeight = height;
+        WatermarkConfig snapshot = config.copy();
+
+        pending = executor.submit(() -> render(requestId, imageData, snapshot, maxWidth, maxHeight));
+        recordEdtTime(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 取消所有请求并清空预览，必须在EDT上调用
+     */
+    public void clear() {
+        latestRequest.incrementAndGet();
+        cancelPending();
+        previewLabel.setIcon(null);
+        previewLabel.setText("");
+    }
+
+    private void cancelPending() {
+        if (pending != null && pending.cancel(false)) {
+            // 尚未开始的旧请求被直接取消
+            droppedCount.incrementAndGet();
+        }
+        pending = null;
+    }
+
+    /**
+     * 后台渲染
+     */
+    private void render(long requestId, ImageData imageData, WatermarkConfig config, int maxWidth, int maxHeight) {
+        if (requestId != latestRequest.get()) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        ImageIcon previewIcon;
+        try {
+            previewIcon = previewService.generatePreview(imageData, config, maxWidth, maxHeight);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            previewIcon = null;
+        }
+
+        if (requestId != latestRequest.get()) {
+            // 渲染期间已有更新的请求，结果作废
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        ImageIcon result = previewIcon;
+        SwingUtilities.invokeLater(() -> publish(requestId, result));
+    }
+
+    /**
+     * 在EDT上发布渲染结果，只发布最新请求的结果
+     */
+    private void publish(long requestId, ImageIcon previewIcon) {
+        long startNanos = System.nanoTime();
+        if (requestId != latestRequest.get()) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (previewIcon != null) {
+            previewLabel.setText("");
+            previewLabel.setIcon(previewIcon);
+        } else {
+            previewLabel.setIcon(null);
+            previewLabel.setText("无法生成预览");
+        }
+        renderedCount.incrementAndGet();
+        recordEdtTime(System.nanoTime() - startNanos);
+    }
+
+    private void recordEdtTime(long nanos) {
+        edtSamples++;
+        edtTotalNanos += nanos;
+        edtMaxNanos = Math.max(edtMaxNanos, nanos);
+    }
+
+    /**
+     * @return 已发布的预览数量
+     */
+    public long getRenderedCount() {
+        return renderedCount.get();
+    }
+
+    /**
+     * @return 被取消或丢弃的过期请求数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return 单次调度或发布在EDT上的最长耗时（纳秒），必须在EDT上调用
+     */
+    public long getMaxEdtNanos() {
+        return edtMaxNanos;
+    }
+
+    /**
+     * @return 调度和发布在EDT上的平均耗时（纳秒），必须在EDT上调用
+     */
+    public long getAverageEdtNanos() {
+        return edtSamples == 0 ? 0 : edtTotalNanos / edtSamples;
+    }
+
+    /**
+     * 停止后台渲染线程
+     */
+    public void shutdown() {
+        latestRequest.incrementAndGet();
+        executor.shutdownNow();
+    }
+}
@@ -6,6 +6,8 @@ import org.example.model.WatermarkConfig;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * 实时预览服务类
@@ -13,6 +15,11 @@ import java.awt.image.BufferedImage;
  */
 public class PreviewService {
     private WatermarkService watermarkService;
+
+    // 最近一次使用的代理图（原图缩小到预览尺寸的结果）
+    private String proxyKey;
+    private BufferedImage proxyImage;
+    private double proxyScale;
     
     public PreviewService() {
         this.watermarkService = new WatermarkService();
@@ -20,37 +27,88 @@ public class PreviewService {
     
     /**
      * 生成带有水印的预览图像
-     * 注意：此方法始终基于原始图像添加水印，确保不会出现多个水印叠加的情况
+     * 注意：此方法始终基于原始图像添加水印，确保不会出现多个水印叠加的情况。
+     * 先把原图缩小到预览尺寸（代理图），再按相同比例缩放水印的几何参数后绘制，
+     * 得到的结果与“导出后再缩小”一致，而耗时只取决于预览尺寸，与原图尺寸无关
      * @param imageData 原始图像数据（包含原始未修改的图像）
      * @param config 水印配置
      * @param maxWidth 预览图像最大宽度
      * @param maxHeight 预览图像最大高度
      * @return 缩放后的带水印预览图像
      */
-    public ImageIcon generatePreview(ImageData imageData, WatermarkConfig config, int maxWidth, int maxHeight) {
-        if (imageData == null || imageData.getFullImage() == null) {
+    public synchronized ImageIcon generatePreview(ImageData imageData, WatermarkConfig config, int maxWidth, int maxHeight) {
+        if (imageData == null || imageData.getFile() == null) {
             return null;
         }
-        
-        // 先生成带水印的完整图像
-        // 注意：WatermarkService.addWatermark 方法始终基于原始图像添加水印，不会在已有水印的图像上再次添加
-        BufferedImage watermarkedImage = watermarkService.addWatermark(imageData, config);
-        if (watermarkedImage == null) {
+
+        long start = System.nanoTime();
+        BufferedImage proxyBase = getProxyBase(imageData, config, maxWidth, maxHeight);
+        if (proxyBase == null) {
             return null;
         }
-        
+
+        // 在代理图的副本上绘制水印，代理图本身保留给后续预览复用
+        BufferedImage previewImage = ImageCache.copy(proxyBase);
+        watermarkService.applyWatermark(previewImage, config, proxyScale);
+        StageMetrics.getDefault().record(StageMetrics.Stage.PREVIEW, System.nanoTime() - start);
+        return new ImageIcon(previewImage);
+    }
+
+    /**
+     * 获取缩小到预览尺寸的代理图
+     * 拖动滑块等只改变水印参数的操作会复用上一次的代理图，不再访问原图
+     */
+    private BufferedImage getProxyBase(ImageData imageData, WatermarkConfig config, int maxWidth, int maxHeight) {
+        File file = imageData.getFile();
+        int sourceWidth = imageData.getWidth();
+        int sourceHeight = imageData.getHeight();
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            return null;
+        }
+
+        // 预览对应的是导出尺寸（可能经过尺寸调整）的图片
+        Dimension outputSize = watermarkService.getOutputSize(sourceWidth, sourceHeight, config);
+
         // 计算缩放比例以适应预览区域
-        double scale = Math.min((double) maxWidth / watermarkedImage.getWidth(),
-                (double) maxHeight / watermarkedImage.getHeight());
-        
+        double scale = Math.min((double) maxWidth / outputSize.width,
+                (double) maxHeight / outputSize.height);
+
         // 确保至少缩放到一定大小
         scale = Math.max(scale, 0.1);
-        
-        int scaledWidth = (int) (watermarkedImage.getWidth() * scale);
-        int scaledHeight = (int) (watermarkedImage.getHeight() * scale);
-        
+
+        int scaledWidth = Math.max(1, (int) (outputSize.width * scale));
+        int scaledHeight = Math.max(1, (int) (outputSize.height * scale));
+
+        String key = file.getAbsolutePath() + '|' + file.lastModified() + '|' + file.length()
+                + '|' + scaledWidth + 'x' + scaledHeight;
+        if (key.equals(proxyKey)) {
+            return proxyImage;
+        }
+
+        BufferedImage proxy;
+        try {
+            // 只读访问缓存中的原图，无需复制完整图像
+            proxy = ImageCache.getDefault().read(file, source -> scaleImage(source, scaledWidth, scaledHeight));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (proxy == null) {
+            return null;
+        }
+
+        proxyKey = key;
+        proxyImage = proxy;
+        proxyScale = scale;
+        return proxy;
+    }
+
+    /**
+     * 缩放图像
+     */
+    private static BufferedImage scaleImage(BufferedImage source, int width, int height) {
         // 创建缩放后的预览图像
-        BufferedImage previewImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage previewImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = previewImage.createGraphics();
         
         // 设置高质量渲染提示
@@ -59,10 +117,10 @@ public class PreviewService {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
         // 绘制缩放后的图像
-        g2d.drawImage(watermarkedImage, 0, 0, scaledWidth, scaledHeight, null);
+        g2d.drawImage(source, 0, 0, width, height, null);
         g2d.dispose();
         
-        return new ImageIcon(previewImage);
+        return previewImage;
     }
     
     /**
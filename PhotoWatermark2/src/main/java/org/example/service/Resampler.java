@@ -0,0 +1,494 @@
+package org.example.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * 图像缩放（重采样）类
+ * 替代 Image.getScaledInstance(SCALE_SMOOTH) 的面积平均算法，提供三种可选的滤波器：
+ * 渐进式双线性（逐次减半后双线性插值，最快）、双三次（Catmull-Rom）和可分离的 Lanczos-3（最清晰）。
+ * 双三次和 Lanczos-3 先水平后垂直分两趟卷积，缩小时按缩放比例展宽滤波器以避免混叠。
+ * 每一趟都按行拆分为 fork/join 任务并行执行，结果直接写入目标图像的像素数组
+ */
+public class Resampler {
+    /**
+     * 缩放滤波器
+     */
+    public enum Filter {
+        PROGRESSIVE_BILINEAR("渐进式双线性"),
+        BICUBIC("双三次"),
+        LANCZOS3("Lanczos-3");
+
+        private final String displayName;
+
+        Filter(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * 按名称解析滤波器，无法识别时使用 LANCZOS3
+         */
+        public static Filter fromName(String name) {
+            for (Filter filter : values()) {
+                if (filter.name().equalsIgnoreCase(name)) {
+                    return filter;
+                }
+            }
+            return LANCZOS3;
+        }
+    }
+
+    // 每个 fork/join 任务处理的最少行数，避免任务过小
+    private static final int ROWS_PER_TASK = 32;
+
+    private Resampler() {
+    }
+
+    /**
+     * 缩放图像
+     * 带透明通道的图像在预乘透明度后插值，结果为 TYPE_4BYTE_ABGR；不透明图像的结果为 TYPE_3BYTE_BGR。
+     * 两者分别是 ImageIO 解码 PNG 和 JPEG 得到的类型，也是编码器可以直接按行复制的布局，
+     * 写出时无需再转换（INT_RGB 图像编码为 JPEG 时分配的临时内存约为 3BYTE_BGR 的四倍）
+     *
+     * @param source       源图像，不会被修改
+     * @param targetWidth  目标宽度
+     * @param targetHeight 目标高度
+     * @param filter       缩放滤波器
+     * @return 缩放后的图像
+     */
+    public static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight, Filter filter) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("目标尺寸必须大于0: " + targetWidth + "x" + targetHeight);
+        }
+        boolean alpha = source.getColorModel().hasAlpha();
+        PixelSource pixels = new PixelSource(source, alpha);
+
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+        PixelTarget output = new PixelTarget(target);
+
+        if (filter == Filter.PROGRESSIVE_BILINEAR) {
+            // 每次减半都相当于2x2平均，直到不超过目标尺寸的两倍，最后一步做普通双线性插值
+            while (pixels.width >= targetWidth * 2 && pixels.height >= targetHeight * 2) {
+                pixels = halve(pixels);
+            }
+            Kernel bilinear = new Kernel(1.0, Resampler::triangle, false);
+            resample(pixels, output, targetWidth, targetHeight, bilinear);
+        } else {
+            Kernel kernel = filter == Filter.BICUBIC
+                    ? new Kernel(2.0, Resampler::catmullRom, true)
+                    : new Kernel(3.0, Resampler::lanczos3, true);
+            resample(pixels, output, targetWidth, targetHeight, kernel);
+        }
+        return target;
+    }
+
+    /**
+     * 可分离卷积：先水平缩放每一行，再垂直缩放，中间结果保存为8位预乘ARGB
+     */
+    private static void resample(PixelSource source, PixelTarget output, int targetWidth, int targetHeight,
+                                 Kernel kernel) {
+        Weights horizontal = new Weights(source.width, targetWidth, kernel);
+        Weights vertical = new Weights(source.height, targetHeight, kernel);
+
+        int[] intermediate = new int[targetWidth * source.height];
+        ForkJoinPool.commonPool().invoke(new RowTask(0, source.height, (from, to) -> {
+            int[] row = new int[source.width];
+            float[] channels = new float[source.width * 4];
+            for (int y = from; y < to; y++) {
+                source.readRow(y, row);
+                convolveRow(row, channels, horizontal, intermediate, y * targetWidth);
+            }
+        }));
+
+        ForkJoinPool.commonPool().invoke(new RowTask(0, targetHeight, (from, to) -> {
+            float[] sums = new float[targetWidth * 4];
+            int[] row = new int[targetWidth];
+            for (int y = from; y < to; y++) {
+                convolveColumns(intermediate, targetWidth, vertical, y, sums, row);
+                output.writeRow(y, row);
+            }
+        }));
+    }
+
+    /**
+     * 水平卷积一行：先把整行拆成按像素交错的浮点分量，避免每个抽头都重复拆分和类型转换
+     */
+    private static void convolveRow(int[] row, float[] channels, Weights weights, int[] out, int outOffset) {
+        for (int x = 0, c = 0; x < row.length; x++, c += 4) {
+            int pixel = row[x];
+            channels[c] = pixel >>> 24;
+            channels[c + 1] = (pixel >> 16) & 0xff;
+            channels[c + 2] = (pixel >> 8) & 0xff;
+            channels[c + 3] = pixel & 0xff;
+        }
+        for (int x = 0; x < weights.size; x++) {
+            float[] w = weights.values[x];
+            float a = 0, r = 0, g = 0, b = 0;
+            for (int i = 0, c = weights.starts[x] * 4; i < w.length; i++, c += 4) {
+                float weight = w[i];
+                a += channels[c] * weight;
+                r += channels[c + 1] * weight;
+                g += channels[c + 2] * weight;
+                b += channels[c + 3] * weight;
+            }
+            out[outOffset + x] = pack(a, r, g, b);
+        }
+    }
+
+    /**
+     * 垂直卷积得到一行输出：按抽头逐行累加，使内层循环顺序访问中间结果，而不是按列跨行跳跃
+     */
+    private static void convolveColumns(int[] in, int width, Weights weights, int y, float[] sums, int[] out) {
+        Arrays.fill(sums, 0f);
+        float[] w = weights.values[y];
+        for (int i = 0; i < w.length; i++) {
+            float weight = w[i];
+            int rowOffset = (weights.starts[y] + i) * width;
+            for (int x = 0, c = 0; x < width; x++, c += 4) {
+                int pixel = in[rowOffset + x];
+                sums[c] += (pixel >>> 24) * weight;
+                sums[c + 1] += ((pixel >> 16) & 0xff) * weight;
+                sums[c + 2] += ((pixel >> 8) & 0xff) * weight;
+                sums[c + 3] += (pixel & 0xff) * weight;
+            }
+        }
+        for (int x = 0, c = 0; x < width; x++, c += 4) {
+            out[x] = pack(sums[c], sums[c + 1], sums[c + 2], sums[c + 3]);
+        }
+    }
+
+    /**
+     * 宽高各缩小一半（2x2平均），奇数尺寸时丢弃最后一行或一列
+     */
+    private static PixelSource halve(PixelSource source) {
+        int width = source.width / 2;
+        int height = source.height / 2;
+        int[] out = new int[width * height];
+        ForkJoinPool.commonPool().invoke(new RowTask(0, height, (from, to) -> {
+            int[] row0 = new int[source.width];
+            int[] row1 = new int[source.width];
+            for (int y = from; y < to; y++) {
+                source.readRow(y * 2, row0);
+                source.readRow(y * 2 + 1, row1);
+                for (int x = 0; x < width; x++) {
+                    int p0 = row0[x * 2];
+                    int p1 = row0[x * 2 + 1];
+                    int p2 = row1[x * 2];
+                    int p3 = row1[x * 2 + 1];
+                    out[y * width + x] = average(p0, p1, p2, p3);
+                }
+            }
+        }));
+        return new PixelSource(out, width, height);
+    }
+
+    private static int average(int p0, int p1, int p2, int p3) {
+        int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+        int r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + 2) >> 2;
+        int g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + 2) >> 2;
+        int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int pack(float a, float r, float g, float b) {
+        return (clamp(a) << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+
+    private static int clamp(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : Math.min(rounded, 255);
+    }
+
+    private static double triangle(double x) {
+        x = Math.abs(x);
+        return x < 1.0 ? 1.0 - x : 0.0;
+    }
+
+    private static double catmullRom(double x) {
+        x = Math.abs(x);
+        if (x < 1.0) {
+            return 1.5 * x * x * x - 2.5 * x * x + 1.0;
+        }
+        if (x < 2.0) {
+            return -0.5 * x * x * x + 2.5 * x * x - 4.0 * x + 2.0;
+        }
+        return 0.0;
+    }
+
+    private static double lanczos3(double x) {
+        x = Math.abs(x);
+        if (x < 1e-8) {
+            return 1.0;
+        }
+        if (x >= 3.0) {
+            return 0.0;
+        }
+        double px = Math.PI * x;
+        return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+    }
+
+    /**
+     * 滤波器函数及其支撑半径
+     */
+    private static class Kernel {
+        private final double support;
+        private final DoubleUnaryOperator function;
+        // 缩小时是否按缩放比例展宽滤波器（渐进式双线性的最后一步不展宽）
+        private final boolean widenOnDownscale;
+
+        Kernel(double support, DoubleUnaryOperator function, boolean widenOnDownscale) {
+            this.support = support;
+            this.function = function;
+            this.widenOnDownscale = widenOnDownscale;
+        }
+    }
+
+    /**
+     * 一个方向上每个目标坐标对应的起始源坐标和归一化权重
+     */
+    private static class Weights {
+        private final int size;
+        private final int[] starts;
+        private final float[][] values;
+
+        Weights(int sourceSize, int targetSize, Kernel kernel) {
+            this.size = targetSize;
+            this.starts = new int[targetSize];
+            this.values = new float[targetSize][];
+
+            double scale = (double) sourceSize / targetSize;
+            double filterScale = kernel.widenOnDownscale ? Math.max(1.0, scale) : 1.0;
+            double support = kernel.support * filterScale;
+
+            for (int i = 0; i < targetSize; i++) {
+                double center = (i + 0.5) * scale;
+                int start = Math.max(0, (int) Math.floor(center - support));
+                int end = Math.min(sourceSize, (int) Math.ceil(center + support));
+                double[] raw = new double[Math.max(1, end - start)];
+                double total = 0;
+                for (int j = 0; j < end - start; j++) {
+                    raw[j] = kernel.function.applyAsDouble((start + j + 0.5 - center) / filterScale);
+                    total += raw[j];
+                }
+                float[] normalized = new float[raw.length];
+                if (total == 0) {
+                    // 源尺寸极小时可能没有有效采样，退化为最近邻
+                    start = Math.min(sourceSize - 1, (int) center);
+                    normalized = new float[]{1f};
+                } else {
+                    for (int j = 0; j < raw.length; j++) {
+                        normalized[j] = (float) (raw[j] / total);
+                    }
+                }
+                starts[i] = start;
+                values[i] = normalized;
+            }
+        }
+    }
+
+    /**
+     * 按行读取预乘ARGB像素
+     * 对 ImageIO 常见的 INT_RGB/INT_ARGB 和 3BYTE_BGR/4BYTE_ABGR 布局直接访问像素数组，其余类型使用 getRGB
+     */
+    private static class PixelSource {
+        private final BufferedImage image;
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final boolean premultiply;
+
+        PixelSource(BufferedImage image, boolean alpha) {
+            this.image = image;
+            this.pixels = null;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.premultiply = alpha;
+        }
+
+        PixelSource(int[] pixels, int width, int height) {
+            this.image = null;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.premultiply = false;
+        }
+
+        void readRow(int y, int[] row) {
+            if (pixels != null) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+                return;
+            }
+            switch (image.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                case BufferedImage.TYPE_INT_ARGB:
+                case BufferedImage.TYPE_INT_ARGB_PRE:
+                    if (readIntRow(y, row)) {
+                        return;
+                    }
+                    break;
+                case BufferedImage.TYPE_3BYTE_BGR:
+                case BufferedImage.TYPE_4BYTE_ABGR:
+                    if (readByteRow(y, row)) {
+                        if (premultiply) {
+                            premultiply(row);
+                        }
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            image.getRGB(0, y, width, 1, row, 0, width);
+            if (premultiply) {
+                premultiply(row);
+            }
+        }
+
+        private boolean readIntRow(int y, int[] row) {
+            Raster raster = image.getRaster();
+            if (!(raster.getDataBuffer() instanceof DataBufferInt) || raster.getParent() != null) {
+                return false;
+            }
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            System.arraycopy(data, y * width, row, 0, width);
+            int type = image.getType();
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int x = 0; x < width; x++) {
+                    row[x] |= 0xff000000;
+                }
+            } else if (type == BufferedImage.TYPE_INT_ARGB) {
+                premultiply(row);
+            }
+            return true;
+        }
+
+        private boolean readByteRow(int y, int[] row) {
+            Raster raster = image.getRaster();
+            if (!(raster.getDataBuffer() instanceof DataBufferByte) || raster.getParent() != null
+                    || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+                return false;
+            }
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int scanline = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+            int offset = y * scanline;
+            if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                for (int x = 0; x < width; x++, offset += 3) {
+                    row[x] = 0xff000000 | ((data[offset + 2] & 0xff) << 16)
+                            | ((data[offset + 1] & 0xff) << 8) | (data[offset] & 0xff);
+                }
+            } else {
+                for (int x = 0; x < width; x++, offset += 4) {
+                    row[x] = ((data[offset] & 0xff) << 24) | ((data[offset + 3] & 0xff) << 16)
+                            | ((data[offset + 2] & 0xff) << 8) | (data[offset + 1] & 0xff);
+                }
+            }
+            return true;
+        }
+
+        private static void premultiply(int[] row) {
+            for (int x = 0; x < row.length; x++) {
+                int pixel = row[x];
+                int a = pixel >>> 24;
+                if (a != 255) {
+                    int r = (((pixel >> 16) & 0xff) * a + 127) / 255;
+                    int g = (((pixel >> 8) & 0xff) * a + 127) / 255;
+                    int b = ((pixel & 0xff) * a + 127) / 255;
+                    row[x] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+    /**
+     * 把预乘ARGB的行写入 3BYTE_BGR 或 4BYTE_ABGR 目标图像的像素数组，透明图像同时取消预乘
+     */
+    private static class PixelTarget {
+        private final byte[] data;
+        private final int width;
+        private final int pixelStride;
+        private final int scanlineStride;
+
+        PixelTarget(BufferedImage image) {
+            this.data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            this.width = image.getWidth();
+            this.pixelStride = image.getType() == BufferedImage.TYPE_4BYTE_ABGR ? 4 : 3;
+            this.scanlineStride = width * pixelStride;
+        }
+
+        void writeRow(int y, int[] row) {
+            int offset = y * scanlineStride;
+            if (pixelStride == 3) {
+                for (int x = 0; x < width; x++, offset += 3) {
+                    int pixel = row[x];
+                    data[offset] = (byte) pixel;
+                    data[offset + 1] = (byte) (pixel >> 8);
+                    data[offset + 2] = (byte) (pixel >> 16);
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++, offset += 4) {
+                int pixel = row[x];
+                int a = pixel >>> 24;
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if (a != 0 && a != 255) {
+                    r = Math.min(255, (r * 255 + a / 2) / a);
+                    g = Math.min(255, (g * 255 + a / 2) / a);
+                    b = Math.min(255, (b * 255 + a / 2) / a);
+                }
+                data[offset] = (byte) a;
+                data[offset + 1] = (byte) b;
+                data[offset + 2] = (byte) g;
+                data[offset + 3] = (byte) r;
+            }
+        }
+    }
+
+    /**
+     * 处理一段行范围的操作
+     */
+    private interface RowRange {
+        void run(int from, int to);
+    }
+
+    /**
+     * 按行二分拆分的 fork/join 任务
+     */
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        // 任务只在进程内执行，不会被序列化
+        private final transient RowRange range;
+
+        RowTask(int from, int to, RowRange range) {
+            this.from = from;
+            this.to = to;
+            this.range = range;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                range.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowTask(from, middle, range), new RowTask(middle, to, range));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.example.service;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * 把水印素材直接混合（SRC_OVER）到目标图像的像素数组中，绕过 Java2D 的通用合成循环
+ * 支持 INT_RGB / INT_ARGB / INT_ARGB_PRE 和 3BYTE_BGR / 4BYTE_ABGR / 4BYTE_ABGR_PRE，
+ * 即解码器、Resampler 和预览产生的全部类型。
+ * 素材按目标布局准备一次（分量顺序与目标相同的预乘源数组和 255-α 数组）之后反复使用，
+ * 每行只处理含有可见像素的区间，逐分量的计算由 BlendKernel 完成。
+ * 素材可以是预乘（ARGB_PRE）或非预乘的透明图像；非预乘的透明目标图像中，
+ * 不透明像素与预乘目标的计算相同，只有半透明像素按标量逐个精确计算
+ */
+final class SpriteBlender {
+    private final int width;
+    private final int height;
+    // 预乘的ARGB像素
+    private final int[] pixels;
+    // 每行含有可见像素的区间 [rowStart, rowEnd)
+    private final int[] rowStart;
+    private final int[] rowEnd;
+
+    private int[] intInverse;
+    private byte[] bgr;
+    private byte[] bgrInverse;
+    private byte[] abgr;
+    private byte[] abgrInverse;
+
+    SpriteBlender(BufferedImage sprite) {
+        this.width = sprite.getWidth();
+        this.height = sprite.getHeight();
+        this.pixels = premultipliedPixels(sprite);
+        this.rowStart = new int[height];
+        this.rowEnd = new int[height];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int start = 0;
+            while (start < width && (pixels[row + start] >>> 24) == 0) {
+                start++;
+            }
+            int end = width;
+            while (end > start && (pixels[row + end - 1] >>> 24) == 0) {
+                end--;
+            }
+            rowStart[y] = start;
+            rowEnd[y] = end;
+        }
+    }
+
+    /**
+     * 判断能否直接混合到目标图像的像素数组中
+     */
+    static boolean supports(BufferedImage target) {
+        WritableRaster raster = target.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0 || buffer.getNumBanks() != 1 || buffer.getOffset() != 0) {
+            return false;
+        }
+        switch (target.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                return buffer instanceof DataBufferInt;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+                // 字节布局的标量混合不比 Java2D 的本地循环快，只在有向量内核时使用
+                return buffer instanceof DataBufferByte && !(BlendKernel.getDefault() instanceof BlendKernel.Scalar);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 把素材混合到目标图像上，超出目标图像的部分被裁剪
+     *
+     * @param target 目标图像，必须满足 supports
+     * @param x      素材左上角在目标图像中的X坐标
+     * @param y      素材左上角在目标图像中的Y坐标
+     */
+    void blend(BufferedImage target, int x, int y) {
+        Rectangle area = new Rectangle(x, y, width, height)
+                .intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+        if (area.isEmpty()) {
+            return;
+        }
+        WritableRaster raster = target.getRaster();
+        switch (target.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                blendInt(raster, area, x, y, target.getType() == BufferedImage.TYPE_INT_ARGB);
+                break;
+            default:
+                blendByte(raster, area, x, y, target.getType());
+                break;
+        }
+    }
+
+    private void blendInt(WritableRaster raster, Rectangle area, int x, int y, boolean straight) {
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int[] inverse = intInverse();
+        BlendKernel kernel = BlendKernel.getDefault();
+
+        for (int targetY = area.y; targetY < area.y + area.height; targetY++) {
+            int spriteY = targetY - y;
+            int from = Math.max(rowStart[spriteY], area.x - x);
+            int to = Math.min(rowEnd[spriteY], area.x + area.width - x);
+            if (from >= to) {
+                continue;
+            }
+            int dstOffset = targetY * stride + x + from;
+            int srcOffset = spriteY * width + from;
+            int length = to - from;
+            if (straight && !isOpaque(data, dstOffset, length)) {
+                blendStraightRow(data, dstOffset, srcOffset, length);
+            } else {
+                kernel.blend(data, dstOffset, pixels, inverse, srcOffset, length);
+            }
+        }
+    }
+
+    private void blendByte(WritableRaster raster, Rectangle area, int x, int y, int type) {
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+        boolean threeByte = type == BufferedImage.TYPE_3BYTE_BGR;
+        boolean straight = type == BufferedImage.TYPE_4BYTE_ABGR;
+        int pixelStride = threeByte ? 3 : 4;
+        byte[][] layout = threeByte ? bgr() : abgr();
+        byte[] source = layout[0];
+        byte[] inverse = layout[1];
+        BlendKernel kernel = BlendKernel.getDefault();
+
+        for (int targetY = area.y; targetY < area.y + area.height; targetY++) {
+            int spriteY = targetY - y;
+            int from = Math.max(rowStart[spriteY], area.x - x);
+            int to = Math.min(rowEnd[spriteY], area.x + area.width - x);
+            if (from >= to) {
+                continue;
+            }
+            int dstOffset = targetY * stride + (x + from) * pixelStride;
+            int srcOffset = (spriteY * width + from) * pixelStride;
+            int length = (to - from) * pixelStride;
+            if (straight && !isOpaque(data, dstOffset, length)) {
+                blendStraightRow(data, dstOffset, spriteY * width + from, to - from);
+            } else {
+                kernel.blend(data, dstOffset, source, inverse, srcOffset, length);
+            }
+        }
+    }
+
+    /**
+     * 逐像素混合非预乘 4BYTE_ABGR 目标图像的一行，单独成方法以免拖慢向量化的主循环
+     */
+    private void blendStraightRow(byte[] data, int dstOffset, int srcOffset, int count) {
+        for (int i = 0, p = dstOffset; i < count; i++, p += 4) {
+            int source = pixels[srcOffset + i];
+            if ((source >>> 24) == 0) {
+                continue;
+            }
+            int d = ((data[p] & 0xff) << 24) | ((data[p + 3] & 0xff) << 16)
+                    | ((data[p + 2] & 0xff) << 8) | (data[p + 1] & 0xff);
+            int result = overStraight(source, d);
+            data[p] = (byte) (result >>> 24);
+            data[p + 1] = (byte) result;
+            data[p + 2] = (byte) (result >> 8);
+            data[p + 3] = (byte) (result >> 16);
+        }
+    }
+
+    private synchronized int[] intInverse() {
+        if (intInverse == null) {
+            int[] inverse = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                inverse[i] = (255 - (pixels[i] >>> 24)) * 0x01010101;
+            }
+            intInverse = inverse;
+        }
+        return intInverse;
+    }
+
+    private synchronized byte[][] bgr() {
+        if (bgr == null) {
+            prepareBgr();
+        }
+        return new byte[][]{bgr, bgrInverse};
+    }
+
+    private synchronized byte[][] abgr() {
+        if (abgr == null) {
+            prepareAbgr();
+        }
+        return new byte[][]{abgr, abgrInverse};
+    }
+
+    private void prepareBgr() {
+        byte[] source = new byte[pixels.length * 3];
+        byte[] inverse = new byte[pixels.length * 3];
+        for (int i = 0, p = 0; i < pixels.length; i++, p += 3) {
+            int pixel = pixels[i];
+            byte ia = (byte) (255 - (pixel >>> 24));
+            source[p] = (byte) pixel;
+            source[p + 1] = (byte) (pixel >> 8);
+            source[p + 2] = (byte) (pixel >> 16);
+            inverse[p] = ia;
+            inverse[p + 1] = ia;
+            inverse[p + 2] = ia;
+        }
+        bgr = source;
+        bgrInverse = inverse;
+    }
+
+    private void prepareAbgr() {
+        byte[] source = new byte[pixels.length * 4];
+        byte[] inverse = new byte[pixels.length * 4];
+        for (int i = 0, p = 0; i < pixels.length; i++, p += 4) {
+            int pixel = pixels[i];
+            byte ia = (byte) (255 - (pixel >>> 24));
+            source[p] = (byte) (pixel >>> 24);
+            source[p + 1] = (byte) pixel;
+            source[p + 2] = (byte) (pixel >> 8);
+            source[p + 3] = (byte) (pixel >> 16);
+            inverse[p] = ia;
+            inverse[p + 1] = ia;
+            inverse[p + 2] = ia;
+            inverse[p + 3] = ia;
+        }
+        abgr = source;
+        abgrInverse = inverse;
+    }
+
+    /**
+     * 逐像素混合非预乘 INT_ARGB 目标图像的一行
+     */
+    private void blendStraightRow(int[] data, int dstOffset, int srcOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            data[dstOffset + i] = overStraight(pixels[srcOffset + i], data[dstOffset + i]);
+        }
+    }
+
+    private static boolean isOpaque(int[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if ((data[i] >>> 24) != 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isOpaque(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i += 4) {
+            if (data[i] != (byte) 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 预乘的源像素合成到非预乘的目标像素上，结果仍为非预乘
+     */
+    private static int overStraight(int source, int target) {
+        int sourceAlpha = source >>> 24;
+        if (sourceAlpha == 0) {
+            return target;
+        }
+        int targetAlpha = target >>> 24;
+        if (targetAlpha == 255) {
+            // 不透明的目标像素无需除法，与预乘目标的计算相同
+            int inverse = 255 - sourceAlpha;
+            return 0xff000000 | ((((source >> 16) & 0xff) + mul255((target >> 16) & 0xff, inverse)) << 16)
+                    | ((((source >> 8) & 0xff) + mul255((target >> 8) & 0xff, inverse)) << 8)
+                    | ((source & 0xff) + mul255(target & 0xff, inverse));
+        }
+        // 目标像素在结果中的权重：αd * (1 - αs)
+        int weight = mul255(targetAlpha, 255 - sourceAlpha);
+        int alpha = sourceAlpha + weight;
+        int r = divide(((source >> 16) & 0xff) + mul255((target >> 16) & 0xff, weight), alpha);
+        int g = divide(((source >> 8) & 0xff) + mul255((target >> 8) & 0xff, weight), alpha);
+        int b = divide((source & 0xff) + mul255(target & 0xff, weight), alpha);
+        return (alpha << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int mul255(int a, int b) {
+        int t = a * b + 128;
+        return (t + (t >>> 8)) >>> 8;
+    }
+
+    private static int divide(int premultiplied, int alpha) {
+        return Math.min(255, (premultiplied * 255 + alpha / 2) / alpha);
+    }
+
+    /**
+     * 读取预乘的ARGB像素：INT_ARGB_PRE 素材直接共享像素数组，其它类型（包括非预乘的透明图像）读取后预乘
+     */
+    private static int[] premultipliedPixels(BufferedImage sprite) {
+        WritableRaster raster = sprite.getRaster();
+        if (sprite.getType() == BufferedImage.TYPE_INT_ARGB_PRE && raster.getParent() == null
+                && raster.getDataBuffer().getOffset() == 0
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == sprite.getWidth()) {
+            return ((DataBufferInt) raster.getDataBuffer()).getData();
+        }
+        int[] argb = sprite.getRGB(0, 0, sprite.getWidth(), sprite.getHeight(), null, 0, sprite.getWidth());
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            int a = pixel >>> 24;
+            if (a != 255) {
+                argb[i] = (a << 24) | (mul255((pixel >> 16) & 0xff, a) << 16)
+                        | (mul255((pixel >> 8) & 0xff, a) << 8) | mul255(pixel & 0xff, a);
+            }
+        }
+        return argb;
+    }
+}
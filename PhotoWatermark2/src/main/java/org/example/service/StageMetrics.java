@@ -0,0 +1,370 @@
+package org.example.service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 各处理阶段的耗时统计
+ * 读取、解码、尺寸调整、合成、编码、写盘等阶段各有一个耗时直方图，另外统计读写和复制的字节数。
+ * 记录是无锁的，可以在工作线程中直接调用；统计值只增不减，
+ * 需要某一段时间（例如一次批量导出）的数据时，取两次快照相减（见 Snapshot.minus）。
+ * 预览等界面操作记录到默认实例；每次批量导出使用自己的实例（见 BatchExportService.export），
+ * 导出期间的预览和缓存未命中不会混入导出的统计
+ */
+public class StageMetrics {
+    private static final StageMetrics DEFAULT = new StageMetrics();
+
+    /**
+     * 处理阶段
+     */
+    public enum Stage {
+        // 导出流水线在I/O线程中把源文件读入内存，解码不再包含读盘时间
+        READ("读取"),
+        DECODE("解码"),
+        RESIZE("尺寸调整"),
+        COMPOSITE("合成"),
+        ENCODE("编码"),
+        WRITE("写盘"),
+        // 超大图片按条带流式处理，解码、合成和编码交织在一起，只能整体计时（不含写盘）
+        STREAM("流式处理"),
+        PREVIEW("预览");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+    private final LongAdder images = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+
+    public StageMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new Histogram());
+        }
+    }
+
+    /**
+     * 获取预览等界面操作使用的默认实例
+     */
+    public static StageMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 记录一次阶段耗时
+     *
+     * @param stage 阶段
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    /**
+     * 记录一张完成导出的图片
+     */
+    public void addImage() {
+        images.increment();
+    }
+
+    /**
+     * 记录从磁盘读取（解码）的字节数
+     */
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * 记录写入磁盘的字节数
+     */
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * 记录合成水印时复制的像素字节数
+     */
+    public void addBytesCopied(long bytes) {
+        bytesCopied.add(bytes);
+    }
+
+    /**
+     * 获取当前的统计快照
+     */
+    public Snapshot snapshot() {
+        Map<Stage, Histogram.Counts> counts = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, Histogram> entry : histograms.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().counts());
+        }
+        return new Snapshot(System.nanoTime(), counts, images.sum(), bytesRead.sum(), bytesWritten.sum(),
+                bytesCopied.sum());
+    }
+
+    /**
+     * 对数-线性分桶的耗时直方图
+     * 数值按2的幂分组，每组再线性分成16个桶，百分位数的相对误差不超过 1/16，
+     * 桶的数量固定（不超过960个），与记录次数无关
+     */
+    static class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(long value) {
+            long clamped = Math.max(0, value);
+            buckets.incrementAndGet(bucketOf(clamped));
+            count.increment();
+            sum.add(clamped);
+        }
+
+        Counts counts() {
+            long[] copy = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = buckets.get(i);
+            }
+            // 各字段分别读取，并发记录时可能有极小的不一致，不影响统计用途
+            return new Counts(copy, count.sum(), sum.sum());
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long lowerBound(int bucket) {
+            int group = bucket >>> SUB_BUCKET_BITS;
+            long subBucket = bucket & (SUB_BUCKETS - 1);
+            if (group == 0) {
+                return subBucket;
+            }
+            return (SUB_BUCKETS + subBucket) << (group - 1);
+        }
+
+        static long upperBound(int bucket) {
+            int group = bucket >>> SUB_BUCKET_BITS;
+            return lowerBound(bucket) + (group == 0 ? 1 : 1L << (group - 1));
+        }
+
+        /**
+         * 直方图某一时刻的计数
+         */
+        static class Counts {
+            private final long[] buckets;
+            private final long count;
+            private final long sum;
+
+            Counts(long[] buckets, long count, long sum) {
+                this.buckets = buckets;
+                this.count = count;
+                this.sum = sum;
+            }
+
+            Counts minus(Counts earlier) {
+                long[] delta = new long[buckets.length];
+                for (int i = 0; i < buckets.length; i++) {
+                    delta[i] = buckets[i] - earlier.buckets[i];
+                }
+                return new Counts(delta, count - earlier.count, sum - earlier.sum);
+            }
+
+            /**
+             * @param percentile 百分位（0-100）
+             * @return 百分位数所在桶的中点，没有记录时返回0
+             */
+            long percentile(double percentile) {
+                long total = 0;
+                for (long bucket : buckets) {
+                    total += bucket;
+                }
+                if (total == 0) {
+                    return 0;
+                }
+                long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+                long seen = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    seen += buckets[i];
+                    if (seen >= rank) {
+                        return (lowerBound(i) + upperBound(i) - 1) / 2;
+                    }
+                }
+                return upperBound(buckets.length - 1);
+            }
+
+            /**
+             * @return 最大值所在桶的上界，没有记录时返回0
+             */
+            long max() {
+                for (int i = buckets.length - 1; i >= 0; i--) {
+                    if (buckets[i] > 0) {
+                        return upperBound(i) - 1;
+                    }
+                }
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 统计快照
+     */
+    public static class Snapshot {
+        private final long nanoTime;
+        private final Map<Stage, Histogram.Counts> stages;
+        private final long images;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long bytesCopied;
+
+        Snapshot(long nanoTime, Map<Stage, Histogram.Counts> stages, long images, long bytesRead,
+                 long bytesWritten, long bytesCopied) {
+            this.nanoTime = nanoTime;
+            this.stages = stages;
+            this.images = images;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.bytesCopied = bytesCopied;
+        }
+
+        /**
+         * 计算两次快照之间的增量
+         *
+         * @param earlier 较早的快照
+         * @return 从 earlier 到本快照之间记录的统计
+         */
+        public Snapshot minus(Snapshot earlier) {
+            Map<Stage, Histogram.Counts> delta = new EnumMap<>(Stage.class);
+            for (Map.Entry<Stage, Histogram.Counts> entry : stages.entrySet()) {
+                delta.put(entry.getKey(), entry.getValue().minus(earlier.stages.get(entry.getKey())));
+            }
+            return new Snapshot(nanoTime - earlier.nanoTime, delta, images - earlier.images,
+                    bytesRead - earlier.bytesRead, bytesWritten - earlier.bytesWritten,
+                    bytesCopied - earlier.bytesCopied);
+        }
+
+        /**
+         * @return 增量快照覆盖的时长（纳秒）；直接取得的快照为 System.nanoTime 的值
+         */
+        public long getElapsedNanos() {
+            return nanoTime;
+        }
+
+        public long getCount(Stage stage) {
+            return stages.get(stage).count;
+        }
+
+        public long getTotalNanos(Stage stage) {
+            return stages.get(stage).sum;
+        }
+
+        /**
+         * @param stage      阶段
+         * @param percentile 百分位（0-100）
+         * @return 耗时的百分位数（纳秒），相对误差不超过 1/16
+         */
+        public long getPercentileNanos(Stage stage, double percentile) {
+            return stages.get(stage).percentile(percentile);
+        }
+
+        public long getMaxNanos(Stage stage) {
+            return stages.get(stage).max();
+        }
+
+        public long getImages() {
+            return images;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getBytesCopied() {
+            return bytesCopied;
+        }
+
+        /**
+         * @return 增量快照期间的吞吐量（张/秒）
+         */
+        public double getImagesPerSecond() {
+            return nanoTime <= 0 ? 0 : images / (nanoTime / 1_000_000_000.0);
+        }
+
+        /**
+         * @return 增量快照期间的写盘速度（MB/秒）
+         */
+        public double getWrittenMegabytesPerSecond() {
+            return nanoTime <= 0 ? 0 : bytesWritten / (1024.0 * 1024.0) / (nanoTime / 1_000_000_000.0);
+        }
+
+        /**
+         * 生成状态栏使用的单行摘要：吞吐量以及有记录的各阶段 p50/p99
+         */
+        public String toStatusText() {
+            StringBuilder text = new StringBuilder(String.format("%.1f 张/秒，%.1f MB/秒",
+                    getImagesPerSecond(), getWrittenMegabytesPerSecond()));
+            for (Stage stage : Stage.values()) {
+                if (stage != Stage.PREVIEW && getCount(stage) > 0) {
+                    text.append(String.format(" | %s p50 %.0f ms / p99 %.0f ms", stage.getDisplayName(),
+                            getPercentileNanos(stage, 50) / 1e6, getPercentileNanos(stage, 99) / 1e6));
+                }
+            }
+            return text.toString();
+        }
+
+        /**
+         * 转换为运行报告中各阶段的统计（毫秒），没有记录的阶段省略
+         */
+        public Map<String, Object> toReport() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("elapsedMillis", nanoTime / 1_000_000.0);
+            report.put("images", images);
+            report.put("imagesPerSecond", getImagesPerSecond());
+            report.put("bytesRead", bytesRead);
+            report.put("bytesWritten", bytesWritten);
+            report.put("bytesCopied", bytesCopied);
+            report.put("writtenMegabytesPerSecond", getWrittenMegabytesPerSecond());
+
+            Map<String, Object> stageReports = new LinkedHashMap<>();
+            for (Stage stage : Stage.values()) {
+                long count = getCount(stage);
+                if (count == 0) {
+                    continue;
+                }
+                Map<String, Object> stageReport = new LinkedHashMap<>();
+                stageReport.put("count", count);
+                stageReport.put("totalMillis", getTotalNanos(stage) / 1e6);
+                stageReport.put("meanMillis", getTotalNanos(stage) / 1e6 / count);
+                stageReport.put("p50Millis", getPercentileNanos(stage, 50) / 1e6);
+                stageReport.put("p90Millis", getPercentileNanos(stage, 90) / 1e6);
+                stageReport.put("p99Millis", getPercentileNanos(stage, 99) / 1e6);
+                stageReport.put("maxMillis", getMaxNanos(stage) / 1e6);
+                stageReports.put(stage.name().toLowerCase(), stageReport);
+            }
+            report.put("stages", stageReports);
+            return report;
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package org.example.service;
+
+import org.example.model.WatermarkConfig;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 条带式流式水印服务类
+ * 用于处理超过堆内存的超大图片（全景图、大幅扫描件）：
+ * 按水平条带解码，只在与水印相交的条带上绘制水印，并把条带按行交给编码器。
+ * 任何时刻内存中只保留一两个条带，峰值内存与条带高度成正比，与图片面积无关。
+ * 条带使用解码器原生的 3BYTE_BGR / 4BYTE_ABGR 布局，解码器直接写入条带，
+ * 编码器按行取得的是条带栅格的子栅格，整个过程不做像素格式转换。
+ * <p>
+ * 解码方式：
+ * <ol>
+ *     <li>按行顺序解码（基线JPEG、非隔行PNG）：解码线程对整张图片只调用一次 ImageReader.read，
+ *     解码器按行写出的像素依次落入两个交替使用的条带，整张图片只解码一次，解码与编码互相重叠</li>
+ *     <li>按区域解码（其它情况）：通过 ImageReadParam.setSourceRegion 逐个条带解码。
+ *     渐进式JPEG和隔行PNG的像素分多遍写出，只能这样处理，而压缩格式无法随机访问，
+ *     每个条带都要从文件开头重新解码，因此这类图片把条带数限制在 MAX_RESTART_BANDS 以内，
+ *     解码总耗时最多约为普通解码的几倍；TIFF 等分块存储的格式可以直接定位，不受影响</li>
+ * </ol>
+ * <p>
+ * 限制：
+ * 1. 不支持尺寸调整，启用尺寸调整时仍需完整解码
+ * 2. JPEG 输出不使用优化哈夫曼表和渐进式编码，这两者需要编码器在内存中保存整张图片的DCT系数
+ */
+public class StreamingWatermarkService {
+    /**
+     * 可通过该系统属性指定启用流式处理的解码字节数阈值
+     */
+    public static final String THRESHOLD_PROPERTY = "photowatermark.streaming.minBytes";
+
+    // 单个条带的目标字节数
+    private static final long BAND_BYTES = 16L * 1024 * 1024;
+    private static final int MIN_BAND_HEIGHT = 16;
+    // 需要从文件开头重新解码的图片最多分成的条带数，解码总耗时约为普通解码的（条带数 + 1）/ 2 倍
+    private static final int MAX_RESTART_BANDS = 8;
+    // 已确认按行顺序写出像素的解码器，其它解码器（包括第三方插件）按区域解码
+    private static final Set<String> SEQUENTIAL_READERS = Set.of(
+            "com.sun.imageio.plugins.jpeg.JPEGImageReader",
+            "com.sun.imageio.plugins.png.PNGImageReader");
+
+    private final WatermarkService watermarkService;
+
+    /**
+     * @param watermarkService 用于绘制水印和获取编码器的水印服务
+     */
+    public StreamingWatermarkService(WatermarkService watermarkService) {
+        this.watermarkService = watermarkService;
+    }
+
+    /**
+     * 判断图片是否应当使用流式处理
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param config 水印配置
+     * @return 解码后的字节数超过阈值且未启用尺寸调整时返回true
+     */
+    public static boolean shouldStream(int width, int height, WatermarkConfig config) {
+        if (config.isResizeEnabled() || width <= 0 || height <= 0) {
+            return false;
+        }
+        // ImageIO 的解码器和编码器以 int 计算像素偏移，像素总数不能超过 int 范围
+        if ((long) width * height > Integer.MAX_VALUE) {
+            return false;
+        }
+        return (long) width * height * 4 > threshold();
+    }
+
+    /**
+     * 估算流式处理一张图片需要的内存：按行顺序解码时最多两个条带及各自的解码缓冲区，
+     * 按区域解码时一个放大后的条带及其解码结果，取两者中较大的一个
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     */
+    static long estimateBytes(int width, int height) {
+        long sequential = 4L * width * 4 * bandHeight(width, height);
+        long restart = 2L * width * 4 * restartBandHeight(width, height);
+        return Math.max(sequential, restart);
+    }
+
+    /**
+     * 以流式方式为图片添加水印并写出
+     *
+     * @param source     源图片文件
+     * @param config     水印配置
+     * @param outputFile 输出文件
+     */
+    public void export(File source, WatermarkConfig config, File outputFile) throws IOException {
+        long start = System.nanoTime();
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                throw new IOException("无法读取图片: " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图片格式: " + source);
+            }
+            ImageReader reader = readers.next();
+            try {
+                // 按区域解码时每个条带都要重新定位到图片开头，因此不能只向前读取
+                reader.setInput(input, false, true);
+                long writeNanos = export(reader, source, config, outputFile);
+                // 条带在编码器取数据时才解码和合成，只能整体计时，写盘时间已单独记录
+                StageMetrics metrics = watermarkService.getMetrics();
+                metrics.record(StageMetrics.Stage.STREAM, System.nanoTime() - start - writeNanos);
+                metrics.addBytesRead(source.length());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return 写盘耗费的时间（纳秒）
+     */
+    private long export(ImageReader reader, File source, WatermarkConfig config, File outputFile)
+            throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        boolean jpeg = WatermarkService.isJpeg(config.getExportFormat());
+
+        // 只有PNG输出才保留透明通道，JPEG输出与 saveImage 一样合成到白色背景上
+        ImageTypeSpecifier rawType = reader.getRawImageType(0);
+        boolean sourceHasAlpha = rawType != null && rawType.getColorModel().hasAlpha();
+        boolean keepAlpha = sourceHasAlpha && !jpeg;
+        boolean fillWhite = sourceHasAlpha && !keepAlpha;
+        int bandType = keepAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+        // 解码器能否直接输出条带的像素布局，不能时（例如灰度图、需要合成到白色背景的透明图）解码后转换
+        boolean decodeInPlace = !fillWhite && supportsType(reader, bandType);
+
+        BandSource bands;
+        if (isSequential(reader)) {
+            ImageTypeSpecifier decodeType = decodeInPlace ? null : reader.getImageTypes(0).next();
+            bands = new SequentialBandSource(reader, config, width, height, bandHeight(width, height), bandType,
+                    decodeType, fillWhite);
+        } else {
+            int bandHeight = isRandomAccess(reader) ? bandHeight(width, height) : restartBandHeight(width, height);
+            int bandCount = (height + bandHeight - 1) / bandHeight;
+            if (bandCount > 1 && !isRandomAccess(reader)) {
+                System.err.println("警告: " + source.getName() + " 是渐进式或隔行图片，无法按行顺序解码，"
+                        + "分 " + bandCount + " 个条带各自从文件开头解码");
+            }
+            bands = new RegionBandSource(reader, config, width, height, bandHeight, bandType, decodeInPlace,
+                    fillWhite);
+        }
+
+        ColorModel colorModel = bands.band.getColorModel();
+        BufferedImage image = new BufferedImage(colorModel, new BandRaster(bands), false, null);
+
+        try {
+            if (jpeg) {
+                return WatermarkService.write(WatermarkService.jpegWriter(), image,
+                        WatermarkService.createJpegParam((int) config.getJpegQuality(), false, false), outputFile,
+                        watermarkService.getMetrics());
+            }
+            return WatermarkService.write(WatermarkService.pngWriter(), image, null, outputFile,
+                    watermarkService.getMetrics());
+        } catch (UncheckedIOException e) {
+            // 条带解码失败，write 已删除临时文件，输出文件保持原样
+            throw e.getCause();
+        } finally {
+            bands.dispose();
+        }
+    }
+
+    private static long threshold() {
+        Long configured = Long.getLong(THRESHOLD_PROPERTY);
+        if (configured != null) {
+            return configured;
+        }
+        // 默认在单张图片超过最大堆内存的八分之一时使用流式处理
+        return Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    /**
+     * @return 目标字节数对应的条带高度
+     */
+    private static int bandHeight(int width, int height) {
+        return (int) Math.max(MIN_BAND_HEIGHT, Math.min(height, BAND_BYTES / (width * 4L)));
+    }
+
+    /**
+     * @return 需要从文件开头重新解码时的条带高度，条带数不超过 MAX_RESTART_BANDS
+     */
+    private static int restartBandHeight(int width, int height) {
+        return Math.max(bandHeight(width, height), (height + MAX_RESTART_BANDS - 1) / MAX_RESTART_BANDS);
+    }
+
+    /**
+     * 判断能否按行顺序一次解码整张图片：解码器按行顺序写出像素，且图片不是渐进式JPEG或隔行PNG
+     * （标准元数据中的 NumProgressiveScans 大于1，像素分多遍写出）
+     */
+    private static boolean isSequential(ImageReader reader) throws IOException {
+        if (!SEQUENTIAL_READERS.contains(reader.getClass().getName())) {
+            return false;
+        }
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return false;
+        }
+        Node tree = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+        NodeList scans = ((IIOMetadataNode) tree).getElementsByTagName("NumProgressiveScans");
+        if (scans.getLength() == 0) {
+            return true;
+        }
+        String value = ((IIOMetadataNode) scans.item(0)).getAttribute("value");
+        try {
+            return Integer.parseInt(value) <= 1;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 判断解码器能否直接定位到任意条带（TIFF 按条带或分块存储）
+     */
+    private static boolean isRandomAccess(ImageReader reader) {
+        for (String name : reader.getOriginatingProvider().getFormatNames()) {
+            if ("tiff".equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 条带来源：编码器按行取像素时提供包含该行的条带，条带上已绘制水印
+     */
+    private abstract class BandSource {
+        final WatermarkConfig config;
+        final int width;
+        final int height;
+        final int bandHeight;
+        final boolean fillWhite;
+        // 当前条带，其中第 row 行位于 row - bandStart
+        BufferedImage band;
+        int bandStart = -1;
+        int bandEnd = -1;
+
+        BandSource(WatermarkConfig config, int width, int height, int bandHeight, boolean fillWhite) {
+            this.config = config;
+            this.width = width;
+            this.height = height;
+            this.bandHeight = bandHeight;
+            this.fillWhite = fillWhite;
+        }
+
+        /**
+         * 确保包含第 row 行的条带已解码
+         *
+         * @return 当前条带的栅格，其中第 row 行位于 row - bandStart
+         */
+        abstract WritableRaster bandFor(int row);
+
+        abstract void dispose();
+
+        /**
+         * 把解码结果转换到条带布局（需要时合成到白色背景上），再绘制与条带相交的水印
+         *
+         * @param target  条带
+         * @param decoded 解码结果，与条带是同一图像时不做转换
+         * @param start   条带第一行在整张图片中的位置
+         */
+        void finish(BufferedImage target, BufferedImage decoded, int start) {
+            if (decoded != target) {
+                Graphics2D g2d = target.createGraphics();
+                g2d.setComposite(AlphaComposite.Src);
+                if (fillWhite) {
+                    g2d.setColor(Color.WHITE);
+                    g2d.fillRect(0, 0, target.getWidth(), target.getHeight());
+                    g2d.setComposite(AlphaComposite.SrcOver);
+                }
+                g2d.drawImage(decoded, 0, 0, null);
+                g2d.dispose();
+            }
+            // 水印位置按整张图片计算，只有与本条带相交的部分会被绘制
+            watermarkService.drawWatermark(target, 0, start, width, height, config, 1.0);
+        }
+    }
+
+    /**
+     * 按区域解码：编码器越过条带边界时解码下一个条带，只保留当前条带
+     */
+    private class RegionBandSource extends BandSource {
+        private final ImageReader reader;
+        private final boolean decodeInPlace;
+
+        RegionBandSource(ImageReader reader, WatermarkConfig config, int width, int height, int bandHeight,
+                         int bandType, boolean decodeInPlace, boolean fillWhite) {
+            super(config, width, height, bandHeight, fillWhite);
+            this.reader = reader;
+            this.decodeInPlace = decodeInPlace;
+            this.band = new BufferedImage(width, bandHeight, bandType);
+        }
+
+        @Override
+        WritableRaster bandFor(int row) {
+            if (row < bandStart || row >= bandEnd) {
+                load(row - row % bandHeight);
+            }
+            return band.getRaster();
+        }
+
+        private void load(int start) {
+            bandStart = start;
+            bandEnd = Math.min(height, start + bandHeight);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, bandStart, width, bandEnd - bandStart));
+                BufferedImage decoded = band;
+                if (decodeInPlace) {
+                    param.setDestination(band);
+                    reader.read(0, param);
+                } else {
+                    decoded = reader.read(0, param);
+                }
+                finish(band, decoded, bandStart);
+            } catch (IOException e) {
+                // 编码器取像素的接口不能抛出受检异常，以非受检异常中止编码，write 随之删除临时文件，
+                // 损坏的图片不会以空白条带的形式留在输出文件名下
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void dispose() {
+            band.flush();
+        }
+    }
+
+    /**
+     * 按行顺序解码：解码线程对整张图片只调用一次 ImageReader.read，目标图像的栅格（见 SinkRaster）
+     * 把解码器逐行写出的像素放入当前条带，条带写满后绘制水印交给编码器；
+     * 编码器读完一个条带后归还给解码线程复用，两个条带交替使用。
+     * 解码失败时把异常交给编码器，编码器取像素时抛出，与按区域解码一样中止写出
+     */
+    private class SequentialBandSource extends BandSource {
+        private final ImageReader reader;
+        private final BlockingQueue<Slot> free = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Slot> filled = new LinkedBlockingQueue<>();
+        private final BufferedImage destination;
+        private final Thread decoder;
+        // 编码器提前结束（写出失败或导出取消）时置位，解码线程随之中止解码
+        private volatile boolean cancelled;
+        // 编码器正在读取的条带
+        private Slot reading;
+        // 解码线程正在写入的条带和已写到的行，只由解码线程访问
+        private Slot writing;
+        private int decodedRows;
+
+        SequentialBandSource(ImageReader reader, WatermarkConfig config, int width, int height, int bandHeight,
+                             int bandType, ImageTypeSpecifier decodeType, boolean fillWhite) {
+            super(config, width, height, bandHeight, fillWhite);
+            this.reader = reader;
+            for (int i = 0; i < 2; i++) {
+                BufferedImage slotBand = new BufferedImage(width, bandHeight, bandType);
+                free.add(new Slot(slotBand,
+                        decodeType != null ? decodeType.createBufferedImage(width, bandHeight) : slotBand));
+            }
+            BufferedImage prototype = free.peek().decoded;
+            this.band = free.peek().band;
+            this.destination = new BufferedImage(prototype.getColorModel(),
+                    new SinkRaster(this, prototype.getSampleModel().createCompatibleSampleModel(width, height),
+                            prototype.getRaster().getDataBuffer()),
+                    prototype.isAlphaPremultiplied(), null);
+            this.decoder = Thread.ofPlatform().daemon().name("stream-decoder").start(this::decode);
+        }
+
+        private void decode() {
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setDestination(destination);
+                reader.read(0, param);
+                if (cancelled) {
+                    return;
+                }
+                if (decodedRows < height) {
+                    throw new IIOException("图片数据不完整: 只解码了 " + decodedRows + " / " + height + " 行");
+                }
+                publish(writing);
+            } catch (IOException e) {
+                filled.add(new Slot(e));
+            } catch (RuntimeException | Error e) {
+                // 编码器在等待下一个条带，任何失败都必须交给它，否则写出会一直阻塞
+                filled.add(new Slot(new IOException("解码失败: " + e, e)));
+            }
+        }
+
+        /**
+         * 解码线程：取得第 row 行所在条带的解码缓冲区，越过条带边界时先交出已写满的条带
+         *
+         * @return 解码缓冲区的栅格，其中第 row 行位于 row - 条带起始行；已取消时返回null
+         */
+        WritableRaster rowsFor(int row) {
+            if (writing == null || row >= writing.end) {
+                if (cancelled) {
+                    // 在解码线程中中止，JPEG 解码器不允许其它线程在解码期间调用 abort
+                    reader.abort();
+                    return null;
+                }
+                if (writing != null) {
+                    publish(writing);
+                    writing = null;
+                }
+                try {
+                    writing = free.take();
+                } catch (InterruptedException e) {
+                    reader.abort();
+                    return null;
+                }
+                writing.start = row - row % bandHeight;
+                writing.end = Math.min(height, writing.start + bandHeight);
+            } else if (row < writing.start) {
+                throw new IllegalStateException("解码器没有按行顺序写出像素: " + row);
+            }
+            decodedRows = Math.max(decodedRows, row + 1);
+            return writing.decoded.getRaster();
+        }
+
+        /**
+         * @return 解码线程当前条带第一行在整张图片中的位置
+         */
+        int writingStart() {
+            return writing.start;
+        }
+
+        private void publish(Slot slot) {
+            finish(slot.band, slot.decoded, slot.start);
+            filled.add(slot);
+        }
+
+        @Override
+        WritableRaster bandFor(int row) {
+            while (row >= bandEnd) {
+                if (reading != null) {
+                    free.add(reading);
+                }
+                reading = takeFilled();
+                band = reading.band;
+                bandStart = reading.start;
+                bandEnd = reading.end;
+            }
+            if (row < bandStart) {
+                throw new IllegalStateException("流式图像只能按行顺序读取: " + row);
+            }
+            return band.getRaster();
+        }
+
+        private Slot takeFilled() {
+            Slot slot;
+            try {
+                slot = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("导出已取消"));
+            }
+            if (slot.error != null) {
+                throw new UncheckedIOException(slot.error);
+            }
+            return slot;
+        }
+
+        @Override
+        void dispose() {
+            cancelled = true;
+            decoder.interrupt();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    decoder.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 按行顺序解码时交替使用的条带
+     */
+    private static class Slot {
+        private final BufferedImage band;
+        // 解码缓冲区，解码器能直接输出条带布局时就是条带本身
+        private final BufferedImage decoded;
+        private final IOException error;
+        private int start;
+        private int end;
+
+        Slot(BufferedImage band, BufferedImage decoded) {
+            this.band = band;
+            this.decoded = decoded;
+            this.error = null;
+        }
+
+        /**
+         * 解码失败，编码器取到时抛出
+         */
+        Slot(IOException error) {
+            this.band = null;
+            this.decoded = null;
+            this.error = error;
+        }
+    }
+
+    private static boolean supportsType(ImageReader reader, int bufferedImageType) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            if (types.next().getBufferedImageType() == bufferedImageType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按行顺序解码的目标栅格：覆盖整张图片，像素转发到解码线程当前条带的解码缓冲区。
+     * 只支持 JDK 的 JPEG（setRect）和 PNG（setPixel）解码器写出像素的方式，
+     * 其它写入方式不受支持；取消后写入的像素直接丢弃
+     */
+    private static class SinkRaster extends WritableRaster {
+        private final SequentialBandSource bands;
+
+        SinkRaster(SequentialBandSource bands, SampleModel sampleModel, DataBuffer band) {
+            super(sampleModel, new BandDataBuffer(band), new Point(0, 0));
+            this.bands = bands;
+        }
+
+        @Override
+        public void setRect(int dx, int dy, Raster source) {
+            for (int i = 0; i < source.getHeight(); i++) {
+                int sourceY = source.getMinY() + i;
+                int row = sourceY + dy;
+                WritableRaster rows = bands.rowsFor(row);
+                if (rows == null) {
+                    return;
+                }
+                rows.setRect(source.createChild(source.getMinX(), sourceY, source.getWidth(), 1,
+                        source.getMinX() + dx, row - bands.writingStart(), null));
+            }
+        }
+
+        @Override
+        public void setPixel(int x, int y, int[] pixel) {
+            WritableRaster rows = bands.rowsFor(y);
+            if (rows != null) {
+                rows.setPixel(x, y - bands.writingStart(), pixel);
+            }
+        }
+
+        @Override
+        public void setDataElements(int x, int y, Object data) {
+            WritableRaster rows = bands.rowsFor(y);
+            if (rows != null) {
+                rows.setDataElements(x, y - bands.writingStart(), data);
+            }
+        }
+
+        @Override
+        public WritableRaster createWritableChild(int parentX, int parentY, int width, int height,
+                                                  int childMinX, int childMinY, int[] bandList) {
+            throw new UnsupportedOperationException("按行顺序解码只支持逐行写入");
+        }
+    }
+
+    /**
+     * 以条带为后备存储的整图栅格
+     * 编码器按行读取像素：JPEG 编码器通过 createChild、PNG 编码器通过 getDataElements，
+     * 两者都直接转发给当前条带的栅格，越过条带边界时解码下一个条带。
+     * 其它按元素的通用访问不受支持
+     */
+    private static class BandRaster extends WritableRaster {
+        private final BandSource bands;
+
+        BandRaster(BandSource bands) {
+            super(bands.band.getSampleModel(), new BandDataBuffer(bands.band.getRaster().getDataBuffer()),
+                    new Rectangle(0, 0, bands.width, bands.height), new Point(0, 0), null);
+            this.bands = bands;
+        }
+
+        @Override
+        public Raster createChild(int parentX, int parentY, int width, int height,
+                                  int childMinX, int childMinY, int[] bandList) {
+            WritableRaster band = bands.bandFor(parentY);
+            if (parentY + height <= bands.bandEnd) {
+                return band.createChild(parentX, parentY - bands.bandStart, width, height,
+                        childMinX, childMinY, bandList);
+            }
+            // 跨越条带边界时复制请求的区域
+            WritableRaster copy = band.createCompatibleWritableRaster(parentX, parentY, width, height);
+            copy.setDataElements(parentX, parentY, width, height,
+                    getDataElements(parentX, parentY, width, height, null));
+            return copy.createChild(parentX, parentY, width, height, childMinX, childMinY, bandList);
+        }
+
+        @Override
+        public WritableRaster createWritableChild(int parentX, int parentY, int width, int height,
+                                                  int childMinX, int childMinY, int[] bandList) {
+            throw new UnsupportedOperationException("流式图像是只读的");
+        }
+
+        @Override
+        public Object getDataElements(int x, int y, Object outData) {
+            return bands.bandFor(y).getDataElements(x, y - bands.bandStart, outData);
+        }
+
+        @Override
+        public Object getDataElements(int x, int y, int w, int h, Object outData) {
+            WritableRaster band = bands.bandFor(y);
+            if (y + h <= bands.bandEnd) {
+                return band.getDataElements(x, y - bands.bandStart, w, h, outData);
+            }
+            // 跨越条带边界时逐行读取
+            int elements = getNumDataElements();
+            byte[] out = outData != null ? (byte[]) outData : new byte[w * h * elements];
+            byte[] row = null;
+            for (int rowY = y; rowY < y + h; rowY++) {
+                row = (byte[]) bands.bandFor(rowY).getDataElements(x, rowY - bands.bandStart, w, 1, row);
+                System.arraycopy(row, 0, out, (rowY - y) * w * elements, w * elements);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * 占位的数据缓冲区：流式图像只能按行读取，按元素访问没有意义
+     */
+    private static class BandDataBuffer extends DataBuffer {
+        BandDataBuffer(DataBuffer band) {
+            super(band.getDataType(), band.getSize());
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            throw new UnsupportedOperationException("流式图像只支持按行读取");
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("流式图像是只读的");
+        }
+    }
+}
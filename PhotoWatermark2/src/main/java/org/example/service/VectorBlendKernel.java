@@ -0,0 +1,68 @@
+package org.example.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+
+/**
+ * 基于 Vector API 的混合内核
+ * 把字节（或打包像素）按16位通道重新解释，每个通道容纳两个8位分量，
+ * 高低字节分别计算后再合并，不需要改变向量的形状（位宽）。
+ * 只能通过 BlendKernel.getDefault() 反射加载，未加载 jdk.incubator.vector 模块时不会引用本类
+ */
+final class VectorBlendKernel extends BlendKernel {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    String getName() {
+        return "vector-" + BYTES.vectorBitSize();
+    }
+
+    @Override
+    void blend(byte[] dst, int dstOffset, byte[] src, byte[] inverseAlpha, int srcOffset, int length) {
+        int i = 0;
+        int bound = BYTES.loopBound(length);
+        for (; i < bound; i += BYTES.length()) {
+            ShortVector d = ByteVector.fromArray(BYTES, dst, dstOffset + i).reinterpretAsShorts();
+            ShortVector s = ByteVector.fromArray(BYTES, src, srcOffset + i).reinterpretAsShorts();
+            ShortVector ia = ByteVector.fromArray(BYTES, inverseAlpha, srcOffset + i).reinterpretAsShorts();
+            over(d, s, ia).reinterpretAsBytes().intoArray(dst, dstOffset + i);
+        }
+        blendScalar(dst, dstOffset + i, src, inverseAlpha, srcOffset + i, length - i);
+    }
+
+    @Override
+    void blend(int[] dst, int dstOffset, int[] src, int[] inverseAlpha, int srcOffset, int length) {
+        int i = 0;
+        int bound = INTS.loopBound(length);
+        for (; i < bound; i += INTS.length()) {
+            ShortVector d = IntVector.fromArray(INTS, dst, dstOffset + i).reinterpretAsShorts();
+            ShortVector s = IntVector.fromArray(INTS, src, srcOffset + i).reinterpretAsShorts();
+            ShortVector ia = IntVector.fromArray(INTS, inverseAlpha, srcOffset + i).reinterpretAsShorts();
+            over(d, s, ia).reinterpretAsInts().intoArray(dst, dstOffset + i);
+        }
+        blendScalar(dst, dstOffset + i, src, inverseAlpha, srcOffset + i, length - i);
+    }
+
+    /**
+     * 每个16位通道中的两个分量分别计算 s + d * ia / 255，结果不超过255，相加时不会向相邻分量进位
+     */
+    private static ShortVector over(ShortVector d, ShortVector s, ShortVector ia) {
+        ShortVector low = mul255(d.and((short) 0xff), ia.and((short) 0xff));
+        ShortVector high = mul255(d.lanewise(LSHR, 8), ia.lanewise(LSHR, 8));
+        return s.add(low.or(high.lanewise(LSHL, 8)));
+    }
+
+    /**
+     * 无符号16位运算的 round(a * b / 255)，a、b 均不超过255
+     */
+    private static ShortVector mul255(ShortVector a, ShortVector b) {
+        ShortVector t = a.mul(b).add((short) 128);
+        return t.add(t.lanewise(LSHR, 8)).lanewise(LSHR, 8);
+    }
+}
@@ -0,0 +1,492 @@
+package org.example.service;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 水印素材缓存类
+ * 批量处理时水印素材对每张图片都相同，因此只在第一次使用时生成：
+ * 图片水印预先完成缩放、透明度和旋转，文本水印预先完成字形光栅化（抗锯齿）和旋转，
+ * 都保存为预乘透明度（ARGB_PRE）的图像，之后每张图片只需一次 drawImage 即可完成合成。
+ * 平铺模式由素材再生成一块可以无缝重复的图案（见 ImageAsset.getPattern），同样只生成一次。
+ * 缓存键包含水印文件的修改时间和大小，文件被修改后自动使用新的素材
+ */
+public class WatermarkAssetCache {
+    private static final int MAX_ASSETS = 32;
+
+    // 文本素材四周额外保留的像素，容纳抗锯齿产生的边缘
+    private static final int TEXT_MARGIN = 2;
+
+    // 素材按该边长分块，合成时跳过完全透明的分块（旋转后的外接矩形大部分是透明的）
+    private static final int TILE_SIZE = 64;
+
+    private static final WatermarkAssetCache DEFAULT = new WatermarkAssetCache();
+
+    // 已解码的水印源图，按路径缓存
+    private final Map<String, SourceEntry> sources = new LinkedHashMap<>();
+
+    // 处理完成的水印素材，按最近使用顺序淘汰（预览时拖动滑块会产生很多不同的参数组合）
+    private final Map<String, ImageAsset> assets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImageAsset> eldest) {
+            return size() > MAX_ASSETS;
+        }
+    };
+
+    /**
+     * 获取预览和导出共用的默认缓存
+     */
+    public static WatermarkAssetCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取处理完成的图片水印素材
+     *
+     * @param imageFile 水印图片文件
+     * @param scale     缩放比例
+     * @param opacity   不透明度（0-1）
+     * @param rotation  旋转角度
+     * @return 水印素材，水印图片无法解码或缩放后尺寸为0时返回null
+     */
+    public ImageAsset getImageAsset(File imageFile, float scale, float opacity, double rotation) throws IOException {
+        BufferedImage source = getSource(imageFile);
+        if (source == null) {
+            return null;
+        }
+        int width = (int) (source.getWidth() * scale);
+        int height = (int) (source.getHeight() * scale);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        String key = sourceKey(imageFile) + '|' + width + 'x' + height + '|' + opacity + '|' + rotation;
+        synchronized (this) {
+            ImageAsset asset = assets.get(key);
+            if (asset != null) {
+                return asset;
+            }
+        }
+
+        ImageAsset asset = createImageAsset(source, width, height, opacity, rotation);
+        synchronized (this) {
+            assets.put(key, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * 获取预先光栅化的文本水印素材
+     * 素材以文本基线起点为锚点：绘制位置为 (基线X + offsetX, 基线Y + offsetY)。
+     * 旋转中心与直接绘制时相同，即文本边界框的中心，且锚点总是位于整数像素上，
+     * 因此与直接调用 drawString 的结果只存在合成时的舍入差异（每个通道不超过 2/255）
+     *
+     * @param font     字体（已包含最终字号）
+     * @param text     水印文本
+     * @param color    颜色，alpha 分量为不透明度
+     * @param rotation 旋转角度
+     * @return 文本水印素材，宽高为未旋转时的文本边界尺寸
+     */
+    public ImageAsset getTextAsset(Font font, String text, Color color, double rotation) {
+        String key = "text|" + font.getName() + '|' + font.getStyle() + '|' + font.getSize2D() + '|'
+                + color.getRGB() + '|' + rotation + '|' + text;
+        synchronized (this) {
+            ImageAsset asset = assets.get(key);
+            if (asset != null) {
+                return asset;
+            }
+        }
+
+        ImageAsset asset = createTextAsset(font, text, color, rotation);
+        synchronized (this) {
+            assets.put(key, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        sources.clear();
+        assets.clear();
+    }
+
+    /**
+     * 获取解码后的水印源图，文件被修改后重新解码
+     */
+    private BufferedImage getSource(File imageFile) throws IOException {
+        String path = imageFile.getAbsolutePath();
+        String key = sourceKey(imageFile);
+        synchronized (this) {
+            SourceEntry entry = sources.get(path);
+            if (entry != null && entry.key.equals(key)) {
+                return entry.image;
+            }
+        }
+
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) {
+            return null;
+        }
+        synchronized (this) {
+            SourceEntry previous = sources.put(path, new SourceEntry(key, image));
+            if (previous != null && !previous.key.equals(key)) {
+                // 文件已被修改，基于旧文件生成的素材全部作废
+                assets.keySet().removeIf(assetKey -> assetKey.startsWith(previous.key + '|'));
+            }
+        }
+        return image;
+    }
+
+    private static String sourceKey(File imageFile) {
+        return imageFile.getAbsolutePath() + '|' + imageFile.lastModified() + '|' + imageFile.length();
+    }
+
+    /**
+     * 生成图片水印素材：缩放、应用透明度，并绕自身中心旋转
+     */
+    private static ImageAsset createImageAsset(BufferedImage source, int width, int height,
+                                               float opacity, double rotation) {
+        int offsetX = 0;
+        int offsetY = 0;
+        int spriteWidth = width;
+        int spriteHeight = height;
+        AffineTransform transform = new AffineTransform();
+
+        if (rotation != 0) {
+            // 旋转后的外接矩形决定素材尺寸，偏移量用于把素材放回未旋转时的位置
+            AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(rotation), width / 2.0, height / 2.0);
+            Rectangle2D bounds = rotate.createTransformedShape(new Rectangle(0, 0, width, height)).getBounds2D();
+            offsetX = (int) Math.floor(bounds.getMinX());
+            offsetY = (int) Math.floor(bounds.getMinY());
+            spriteWidth = (int) Math.ceil(bounds.getMaxX()) - offsetX;
+            spriteHeight = (int) Math.ceil(bounds.getMaxY()) - offsetY;
+            transform.translate(-offsetX, -offsetY);
+            transform.concatenate(rotate);
+        }
+
+        BufferedImage sprite = new BufferedImage(spriteWidth, spriteHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (opacity < 1.0f) {
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        }
+        g2d.transform(transform);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+
+        return new ImageAsset(sprite, offsetX, offsetY, width, height);
+    }
+
+    /**
+     * 生成文本水印素材：与 WatermarkService 直接绘制时使用相同的渲染提示，
+     * 先在未旋转的字形像素边界外加上边距，再求旋转后的外接矩形作为素材尺寸
+     */
+    private static ImageAsset createTextAsset(Font font, String text, Color color, double rotation) {
+        // 与目标图像上开启文本抗锯齿、未开启小数度量时的 FontRenderContext 相同
+        FontRenderContext frc = new FontRenderContext(null, true, false);
+        Rectangle2D textBounds = font.getStringBounds(text, frc);
+        int textWidth = (int) textBounds.getWidth();
+        int textHeight = (int) textBounds.getHeight();
+
+        Rectangle glyphBounds = font.createGlyphVector(frc, text).getPixelBounds(frc, 0, 0);
+        glyphBounds.grow(TEXT_MARGIN, TEXT_MARGIN);
+
+        AffineTransform rotate = new AffineTransform();
+        if (rotation != 0) {
+            rotate.rotate(Math.toRadians(rotation), textWidth / 2.0, -textHeight / 2.0);
+        }
+        Rectangle2D bounds = rotate.createTransformedShape(glyphBounds).getBounds2D();
+        int offsetX = (int) Math.floor(bounds.getMinX());
+        int offsetY = (int) Math.floor(bounds.getMinY());
+        int spriteWidth = Math.max(1, (int) Math.ceil(bounds.getMaxX()) - offsetX);
+        int spriteHeight = Math.max(1, (int) Math.ceil(bounds.getMaxY()) - offsetY);
+
+        BufferedImage sprite = new BufferedImage(spriteWidth, spriteHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.translate(-offsetX, -offsetY);
+        g2d.transform(rotate);
+        g2d.setFont(font);
+        g2d.setColor(color);
+        g2d.drawString(text, 0, 0);
+        g2d.dispose();
+
+        return new ImageAsset(sprite, offsetX, offsetY, textWidth, textHeight);
+    }
+
+    /**
+     * 生成平铺图案：一个周期内包含两个素材，第二个向右错开半个周期、向下错开一行，
+     * 形成交错排列；超出周期的部分环绕到另一侧，因此图案可以无缝重复
+     *
+     * @param sprite  已完成缩放、透明度和旋转的素材图像
+     * @param spacing 相邻素材之间的间距
+     */
+    private static ImageAsset createPattern(BufferedImage sprite, int spacing) {
+        int stepX = sprite.getWidth() + spacing;
+        int stepY = sprite.getHeight() + spacing;
+        int patternWidth = stepX;
+        int patternHeight = stepY * 2;
+
+        BufferedImage pattern = new BufferedImage(patternWidth, patternHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = pattern.createGraphics();
+        int[][] positions = {{0, 0}, {stepX / 2, stepY}};
+        for (int[] position : positions) {
+            int startX = Math.floorMod(position[0], patternWidth)
+                    - patternWidth * ((sprite.getWidth() + patternWidth - 1) / patternWidth);
+            int startY = Math.floorMod(position[1], patternHeight)
+                    - patternHeight * ((sprite.getHeight() + patternHeight - 1) / patternHeight);
+            for (int y = startY; y < patternHeight; y += patternHeight) {
+                for (int x = startX; x < patternWidth; x += patternWidth) {
+                    g2d.drawImage(sprite, x, y, null);
+                }
+            }
+        }
+        g2d.dispose();
+
+        return new ImageAsset(pattern, 0, 0, patternWidth, patternHeight);
+    }
+
+    /**
+     * 处理完成的水印素材
+     */
+    public static class ImageAsset {
+        private final BufferedImage sprite;
+        private final int offsetX;
+        private final int offsetY;
+        private final int width;
+        private final int height;
+        // 含有可见像素的分块（与 sprite 共享像素数据）及其在素材中的位置
+        private final List<BufferedImage> tiles = new ArrayList<>();
+        private final List<Point> tileOrigins = new ArrayList<>();
+        // 直接混合像素数组时使用，第一次使用时创建
+        private volatile SpriteBlender blender;
+        // 平铺图案及生成它时的间距，第一次使用时创建
+        private ImageAsset pattern;
+        private int patternSpacing;
+
+        ImageAsset(BufferedImage sprite, int offsetX, int offsetY, int width, int height) {
+            this.sprite = sprite;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.width = width;
+            this.height = height;
+
+            int[] alpha = new int[TILE_SIZE * TILE_SIZE];
+            for (int ty = 0; ty < sprite.getHeight(); ty += TILE_SIZE) {
+                for (int tx = 0; tx < sprite.getWidth(); tx += TILE_SIZE) {
+                    int tw = Math.min(TILE_SIZE, sprite.getWidth() - tx);
+                    int th = Math.min(TILE_SIZE, sprite.getHeight() - ty);
+                    if (hasVisiblePixels(sprite.getAlphaRaster().getSamples(tx, ty, tw, th, 0, alpha), tw * th)) {
+                        tiles.add(sprite.getSubimage(tx, ty, tw, th));
+                        tileOrigins.add(new Point(tx, ty));
+                    }
+                }
+            }
+        }
+
+        private static boolean hasVisiblePixels(int[] alpha, int count) {
+            for (int i = 0; i < count; i++) {
+                if (alpha[i] != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 把素材合成到目标图像上，只绘制含有可见像素且与裁剪区域相交的分块，结果与绘制整张素材相同
+         *
+         * @param g2d     目标图像的图形上下文
+         * @param anchorX 水印锚点X坐标
+         * @param anchorY 水印锚点Y坐标
+         */
+        public void draw(Graphics2D g2d, int anchorX, int anchorY) {
+            int x = anchorX + offsetX;
+            int y = anchorY + offsetY;
+            Rectangle clip = g2d.getClipBounds();
+            for (int i = 0; i < tiles.size(); i++) {
+                Point origin = tileOrigins.get(i);
+                BufferedImage tile = tiles.get(i);
+                int tileX = x + origin.x;
+                int tileY = y + origin.y;
+                if (clip == null || clip.intersects(tileX, tileY, tile.getWidth(), tile.getHeight())) {
+                    g2d.drawImage(tile, tileX, tileY, null);
+                }
+            }
+        }
+
+        /**
+         * 把素材合成到目标图像上
+         * 目标图像的像素布局受支持时直接混合像素数组（见 SpriteBlender），否则通过 Graphics2D 绘制
+         *
+         * @param target  目标图像
+         * @param anchorX 水印锚点在目标图像中的X坐标
+         * @param anchorY 水印锚点在目标图像中的Y坐标
+         */
+        public void draw(BufferedImage target, int anchorX, int anchorY) {
+            if (SpriteBlender.supports(target)) {
+                blender().blend(target, anchorX + offsetX, anchorY + offsetY);
+                return;
+            }
+            Graphics2D g2d = target.createGraphics();
+            draw(g2d, anchorX, anchorY);
+            g2d.dispose();
+        }
+
+        /**
+         * 获取由本素材重复排列而成的平铺图案，间距不变时复用上次生成的图案
+         *
+         * @param spacing 相邻素材之间的间距，小于0时按0处理
+         * @return 平铺图案，用 fill 重复填满目标图像
+         */
+        public synchronized ImageAsset getPattern(int spacing) {
+            spacing = Math.max(0, spacing);
+            if (pattern == null || patternSpacing != spacing) {
+                pattern = createPattern(sprite, spacing);
+                patternSpacing = spacing;
+            }
+            return pattern;
+        }
+
+        /**
+         * 把本素材作为平铺图案重复填满目标图像
+         * 每个周期只混合一次整块图案，开销与一次整幅混合相当，与图案中水印的个数无关。
+         * 目标图像的像素布局受支持时直接混合像素数组，否则通过 Graphics2D 逐个周期绘制
+         *
+         * @param target  目标图像
+         * @param originX 图案某个周期的左上角在目标图像中的X坐标
+         * @param originY 图案某个周期的左上角在目标图像中的Y坐标
+         */
+        public void fill(BufferedImage target, int originX, int originY) {
+            if (!SpriteBlender.supports(target)) {
+                Graphics2D g2d = target.createGraphics();
+                fill(g2d, originX, originY, target.getWidth(), target.getHeight());
+                g2d.dispose();
+                return;
+            }
+            int patternWidth = sprite.getWidth();
+            int patternHeight = sprite.getHeight();
+            int startX = Math.floorMod(originX, patternWidth);
+            int startY = Math.floorMod(originY, patternHeight);
+            SpriteBlender spriteBlender = blender();
+            for (int y = startY > 0 ? startY - patternHeight : 0; y < target.getHeight(); y += patternHeight) {
+                for (int x = startX > 0 ? startX - patternWidth : 0; x < target.getWidth(); x += patternWidth) {
+                    spriteBlender.blend(target, x, y);
+                }
+            }
+        }
+
+        /**
+         * 把本素材作为平铺图案填满 (0, 0, width, height) 区域，只绘制与裁剪区域相交的周期
+         * 逐个周期绘制含有可见像素的分块，比 TexturePaint 逐像素取样快一个数量级
+         *
+         * @param g2d     目标图像的图形上下文
+         * @param originX 图案某个周期的左上角X坐标
+         * @param originY 图案某个周期的左上角Y坐标
+         * @param width   填充区域的宽度
+         * @param height  填充区域的高度
+         */
+        public void fill(Graphics2D g2d, int originX, int originY, int width, int height) {
+            Rectangle area = new Rectangle(0, 0, width, height);
+            Rectangle clip = g2d.getClipBounds();
+            if (clip != null) {
+                area = area.intersection(clip);
+            }
+            if (area.isEmpty()) {
+                return;
+            }
+            int patternWidth = sprite.getWidth();
+            int patternHeight = sprite.getHeight();
+            int startX = area.x - Math.floorMod(area.x - originX, patternWidth);
+            int startY = area.y - Math.floorMod(area.y - originY, patternHeight);
+            for (int y = startY; y < area.y + area.height; y += patternHeight) {
+                for (int x = startX; x < area.x + area.width; x += patternWidth) {
+                    draw(g2d, x - offsetX, y - offsetY);
+                }
+            }
+        }
+
+        private SpriteBlender blender() {
+            SpriteBlender spriteBlender = blender;
+            if (spriteBlender == null) {
+                spriteBlender = new SpriteBlender(sprite);
+                blender = spriteBlender;
+            }
+            return spriteBlender;
+        }
+
+        /**
+         * 获取素材在目标图像上覆盖的区域
+         *
+         * @param anchorX 水印锚点X坐标
+         * @param anchorY 水印锚点Y坐标
+         */
+        public Rectangle getBounds(int anchorX, int anchorY) {
+            return new Rectangle(anchorX + offsetX, anchorY + offsetY, sprite.getWidth(), sprite.getHeight());
+        }
+
+        /**
+         * @return 已完成缩放、透明度和旋转的素材图像
+         */
+        public BufferedImage getSprite() {
+            return sprite;
+        }
+
+        /**
+         * @return 素材相对于水印锚点的X偏移（图片水印为未旋转时的左上角，文本水印为基线起点）
+         */
+        public int getOffsetX() {
+            return offsetX;
+        }
+
+        /**
+         * @return 素材相对于水印锚点的Y偏移
+         */
+        public int getOffsetY() {
+            return offsetY;
+        }
+
+        /**
+         * @return 未旋转时的水印宽度，用于计算水印位置
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return 未旋转时的水印高度，用于计算水印位置
+         */
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    /**
+     * 水印源图缓存条目
+     */
+    private static class SourceEntry {
+        private final String key;
+        private final BufferedImage image;
+
+        SourceEntry(String key, BufferedImage image) {
+            this.key = key;
+            this.image = image;
+        }
+    }
+}
@@ -3,22 +3,65 @@ package org.example.service;
 import org.example.model.ImageData;
 import org.example.model.WatermarkConfig;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
-import java.awt.font.FontRenderContext;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 水印服务类
  */
 public class WatermarkService {
+    /**
+     * 平铺模式的位置名称：水印按配置的间距和旋转角度重复铺满整张图片
+     */
+    public static final String TILED = "TILED";
+
+    // 查找编码器需要遍历 ImageIO 的服务注册表，因此每个线程只创建一次并在整个批次中复用
+    private static final ThreadLocal<ImageWriter> JPEG_WRITER = ThreadLocal.withInitial(() -> createWriter("jpeg"));
+    private static final ThreadLocal<ImageWriter> PNG_WRITER = ThreadLocal.withInitial(() -> createWriter("png"));
+    // 输出文件写入过程中使用的临时文件的后缀
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final WatermarkAssetCache assetCache = WatermarkAssetCache.getDefault();
+    private final FontService fontService = FontService.getInstance();
+    private final StageMetrics metrics;
+
+    public WatermarkService() {
+        this(StageMetrics.getDefault());
+    }
+
+    /**
+     * @param metrics 记录各阶段耗时的统计，批量导出为每次导出使用单独的实例
+     */
+    public WatermarkService(StageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return 本服务记录耗时的统计
+     */
+    StageMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * 为图片添加水印
@@ -30,45 +73,182 @@ public class WatermarkService {
      */
     public BufferedImage addWatermark(ImageData imageData, WatermarkConfig config) {
         // 使用完整图像而不是缩略图
-        Image originalImage = imageData.getFullImage();
-        if (originalImage == null) {
+        BufferedImage bufferedImage = ImageCache.getDefault().getFullImage(imageData);
+        if (bufferedImage == null) {
             return null;
         }
 
-        // 将Image转换为BufferedImage以便处理
-        BufferedImage bufferedImage = toBufferedImage(originalImage);
-        
+        long start = System.nanoTime();
+        long resizeNanos = 0;
         // 如果启用了尺寸调整，则先调整图片尺寸
         if (config.isResizeEnabled()) {
             bufferedImage = resizeImage(bufferedImage, config);
+            resizeNanos = System.nanoTime() - start;
         }
-        
-        int width = bufferedImage.getWidth();
-        int height = bufferedImage.getHeight();
+        // getFullImage 返回的是副本，只有无法直接绘制彩色水印的图像才需要转换
+        boolean flatten = isJpeg(config.getExportFormat());
+        if (needsConversion(bufferedImage, flatten)) {
+            bufferedImage = convert(bufferedImage, flatten);
+        }
+
+        applyWatermark(bufferedImage, config, 1.0);
+        metrics.record(StageMetrics.Stage.COMPOSITE, System.nanoTime() - start - resizeNanos);
+        return bufferedImage;
+    }
+
+    /**
+     * 在图片上直接绘制水印
+     * 水印的几何参数（字号、图片水印缩放、自定义坐标、边缘填充）统一乘以 geometryScale，
+     * 用于在缩小后的代理图上绘制与最终导出结果按比例一致的水印
+     *
+     * @param image         目标图片，会被直接修改
+     * @param config        水印配置
+     * @param geometryScale 几何缩放比例，原始尺寸时为1
+     */
+    public void applyWatermark(BufferedImage image, WatermarkConfig config, double geometryScale) {
+        drawWatermark(image, 0, 0, image.getWidth(), image.getHeight(), config, geometryScale);
+    }
+
+    /**
+     * 在图像上绘制水印，图像的 (0, 0) 对应整张图片中的 (originX, originY)
+     * 用于只覆盖整张图片一部分的写时复制补丁和流式条带。
+     * 图像的像素布局受支持时直接混合像素数组（见 SpriteBlender），否则通过 Graphics2D 绘制
+     *
+     * @param target        目标图像，会被直接修改
+     * @param originX       目标图像左上角在整张图片中的X坐标
+     * @param originY       目标图像左上角在整张图片中的Y坐标
+     * @param width         整张图片的宽度
+     * @param height        整张图片的高度
+     * @param config        水印配置
+     * @param geometryScale 几何缩放比例，原始尺寸时为1
+     */
+    public void drawWatermark(BufferedImage target, int originX, int originY, int width, int height,
+                              WatermarkConfig config, double geometryScale) {
+        Placement placement = placeWatermark(config, width, height, geometryScale);
+        if (placement == null) {
+            return;
+        }
+        if (placement.tiled) {
+            placement.asset.fill(target, placement.x - originX, placement.y - originY);
+        } else {
+            placement.asset.draw(target, placement.x - originX, placement.y - originY);
+        }
+    }
 
-        // 创建图形上下文
-        Graphics2D g2d = bufferedImage.createGraphics();
+    /**
+     * 在图形上下文上绘制水印
+     * 水印位置按 width、height 描述的整张图片计算，因此可以通过平移和裁剪区域
+     * 只绘制到整张图片中的某一个条带上（见 StreamingWatermarkService）
+     *
+     * @param g2d           图形上下文
+     * @param width         整张图片的宽度
+     * @param height        整张图片的高度
+     * @param config        水印配置
+     * @param geometryScale 几何缩放比例，原始尺寸时为1
+     */
+    public void drawWatermark(Graphics2D g2d, int width, int height, WatermarkConfig config, double geometryScale) {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
         // 添加水印
+        Placement placement = placeWatermark(config, width, height, geometryScale);
+        if (placement == null) {
+            return;
+        }
+        if (placement.tiled) {
+            placement.asset.fill(g2d, placement.x, placement.y, width, height);
+        } else {
+            placement.asset.draw(g2d, placement.x, placement.y);
+        }
+    }
+
+    /**
+     * 计算水印在图片上实际覆盖的区域（已考虑旋转），用于只复制和合成这一区域
+     *
+     * @param width         图片宽度
+     * @param height        图片高度
+     * @param config        水印配置
+     * @param geometryScale 几何缩放比例，原始尺寸时为1
+     * @return 与图片相交的水印区域，没有水印时返回空矩形
+     */
+    public Rectangle getWatermarkBounds(int width, int height, WatermarkConfig config, double geometryScale) {
+        Placement placement = placeWatermark(config, width, height, geometryScale);
+        if (placement == null) {
+            return new Rectangle();
+        }
+        if (placement.tiled) {
+            return new Rectangle(0, 0, width, height);
+        }
+        return placement.asset.getBounds(placement.x, placement.y).intersection(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * 以写时复制方式添加水印
+     * 源图不会被修改：只复制水印覆盖的区域并在副本上合成，其余像素直接引用源图，
+     * 因此调用方可以继续复用已解码的源图（例如 ImageCache 中的原图）。
+     * 源图的像素类型保持不变并直接交给编码器；只有灰度图、调色板图（无法绘制彩色水印）
+     * 和导出为JPEG的透明图（需要合成到白色背景上）才会转换一次。
+     * 启用尺寸调整或需要转换时会生成新的图像，水印直接绘制在新图像上
+     *
+     * @param source 源图片，只读
+     * @param config 水印配置
+     * @return 添加水印后的图像
+     */
+    public CopyOnWriteImage composite(BufferedImage source, WatermarkConfig config) {
+        long start = System.nanoTime();
+        boolean flatten = isJpeg(config.getExportFormat());
+        if (config.isResizeEnabled() || needsConversion(source, flatten)) {
+            BufferedImage target = source;
+            long resizeNanos = 0;
+            // 转换像素类型会生成整张图片的副本，计入复制的字节数
+            long bytesCopied = 0;
+            if (config.isResizeEnabled()) {
+                target = resizeImage(source, config);
+                resizeNanos = System.nanoTime() - start;
+            }
+            if (needsConversion(target, flatten)) {
+                target = convert(target, flatten);
+                bytesCopied = ImageCache.sizeOf(target);
+            }
+            applyWatermark(target, config, 1.0);
+            metrics.record(StageMetrics.Stage.COMPOSITE, System.nanoTime() - start - resizeNanos);
+            return CopyOnWriteImage.owned(target, bytesCopied);
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        Rectangle dirty = getWatermarkBounds(width, height, config, 1.0);
+        CopyOnWriteImage result = CopyOnWriteImage.create(source, dirty);
+        if (!dirty.isEmpty()) {
+            Rectangle patchBounds = result.getPatchBounds();
+            drawWatermark(result.getPatch(), patchBounds.x, patchBounds.y, width, height, config, 1.0);
+        }
+        metrics.record(StageMetrics.Stage.COMPOSITE, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 计算水印素材及其锚点位置
+     *
+     * @return 水印位置，没有水印或水印无法生成时返回null
+     */
+    private Placement placeWatermark(WatermarkConfig config, int width, int height, double geometryScale) {
         if (config.getImageFile() != null && config.getImageFile().exists()) {
             // 添加图片水印
-            addImageWatermark(g2d, config, width, height);
+            return placeImageWatermark(config, width, height, geometryScale);
         } else if (config.getText() != null && !config.getText().isEmpty()) {
             // 添加文本水印
-            addTextWatermark(g2d, config, width, height);
+            return placeTextWatermark(config, width, height, geometryScale);
         }
-
-        g2d.dispose();
-        return bufferedImage;
+        return null;
     }
 
     /**
-     * 添加文本水印
+     * 计算文本水印的位置，锚点为文本基线起点
      */
-    private void addTextWatermark(Graphics2D g2d, WatermarkConfig config, int imageWidth, int imageHeight) {
+    private Placement placeTextWatermark(WatermarkConfig config, int imageWidth, int imageHeight,
+                                         double geometryScale) {
         String text = config.getText();
         String fontName = config.getFontName();
         int fontSize = config.getFontSize();
@@ -78,6 +258,7 @@ public class WatermarkService {
         float opacity = (float) (config.getOpacity() / 100.0);
         String position = config.getPosition();
         double rotation = config.getRotation();
+        int padding = (int) Math.round(config.getEdgePadding() * geometryScale);
 
         // 设置字体，确保支持中文字符
         int style = Font.PLAIN;
@@ -89,37 +270,41 @@ public class WatermarkService {
             style = Font.ITALIC;
         }
         
-        // 获取支持中文的字体
-        Font font = getCompatibleFont(fontName, style, fontSize);
-        g2d.setFont(font);
+        // 获取能够显示水印文本的字体
+        Font font = fontService.resolve(fontName, style, fontSize, text);
+        if (geometryScale != 1.0) {
+            font = font.deriveFont((float) (fontSize * geometryScale));
+        }
 
         // 设置颜色和透明度
         Color color = Color.decode(colorStr);
-        g2d.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), (int) (255 * opacity)));
+        Color watermarkColor = new Color(color.getRed(), color.getGreen(), color.getBlue(), (int) (255 * opacity));
 
-        // 计算文本尺寸
-        FontRenderContext frc = g2d.getFontRenderContext();
-        Rectangle2D textBounds = font.getStringBounds(text, frc);
-        int textWidth = (int) textBounds.getWidth();
-        int textHeight = (int) textBounds.getHeight();
+        // 文本只在配置变化时光栅化一次，之后每张图片直接合成
+        WatermarkAssetCache.ImageAsset asset = assetCache.getTextAsset(font, text, watermarkColor, rotation);
+        if (TILED.equals(position)) {
+            return placeTiled(asset, config, imageWidth, imageHeight, geometryScale);
+        }
+        int textWidth = asset.getWidth();
+        int textHeight = asset.getHeight();
 
         // 根据位置设置坐标
         int posX, posY;
         switch (position) {
             case "TOP_LEFT":
-                posX = 20; // 添加边缘填充
-                posY = 20 + textHeight;
+                posX = padding; // 添加边缘填充
+                posY = padding + textHeight;
                 break;
             case "TOP_CENTER":
                 posX = (imageWidth - textWidth) / 2;
-                posY = 20 + textHeight;
+                posY = padding + textHeight;
                 break;
             case "TOP_RIGHT":
-                posX = imageWidth - textWidth - 20;
-                posY = 20 + textHeight;
+                posX = imageWidth - textWidth - padding;
+                posY = padding + textHeight;
                 break;
             case "CENTER_LEFT":
-                posX = 20;
+                posX = padding;
                 posY = (imageHeight + textHeight) / 2;
                 break;
             case "CENTER":
@@ -127,24 +312,24 @@ public class WatermarkService {
                 posY = (imageHeight + textHeight) / 2;
                 break;
             case "CENTER_RIGHT":
-                posX = imageWidth - textWidth - 20;
+                posX = imageWidth - textWidth - padding;
                 posY = (imageHeight + textHeight) / 2;
                 break;
             case "BOTTOM_LEFT":
-                posX = 20;
-                posY = imageHeight - 20;
+                posX = padding;
+                posY = imageHeight - padding;
                 break;
             case "BOTTOM_CENTER":
                 posX = (imageWidth - textWidth) / 2;
-                posY = imageHeight - 20;
+                posY = imageHeight - padding;
                 break;
             case "BOTTOM_RIGHT":
-                posX = imageWidth - textWidth - 20;
-                posY = imageHeight - 20;
+                posX = imageWidth - textWidth - padding;
+                posY = imageHeight - padding;
                 break;
             default: // 自定义位置
-                posX = (int) config.getX();
-                posY = (int) config.getY();
+                posX = (int) (config.getX() * geometryScale);
+                posY = (int) (config.getY() * geometryScale);
                 break;
         }
 
@@ -162,98 +347,36 @@ public class WatermarkService {
             posY = imageHeight - textHeight;
         }
 
-        // 应用旋转
-        if (rotation != 0) {
-            AffineTransform oldTransform = g2d.getTransform();
-            g2d.rotate(Math.toRadians(rotation), posX + textWidth / 2.0, posY - textHeight / 2.0);
-            g2d.drawString(text, posX, posY);
-            g2d.setTransform(oldTransform);
-        } else {
-            g2d.drawString(text, posX, posY);
-        }
-    }
-
-    /**
-     * 获取支持中文的字体
-     * @param fontName 字体名称
-     * @param style 字体样式
-     * @param size 字体大小
-     * @return 支持中文的字体
-     */
-    private Font getCompatibleFont(String fontName, int style, int size) {
-        // 常见的支持中文的字体列表
-        String[] chineseFontNames = {
-            "Microsoft YaHei", "SimHei", "KaiTi", "SimSun", "FangSong", 
-            "YouYuan", "STHeiti", "STSong", "STKaiti", "STFangsong",
-            "PingFang SC", "Hiragino Sans GB", "Source Han Sans CN",
-            "Noto Sans CJK SC", "WenQuanYi Micro Hei", "WenQuanYi Zen Hei"
-        };
-        
-        // 首先尝试使用用户指定的字体
-        Font font = new Font(fontName, style, size);
-        if (isFontSupportChinese(font)) {
-            return font;
-        }
-        
-        // 如果用户指定的字体不支持中文，尝试使用系统中的中文字体
-        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] availableFontFamilyNames = ge.getAvailableFontFamilyNames();
-        Set<String> availableFonts = new HashSet<>(Arrays.asList(availableFontFamilyNames));
-        
-        // 查找系统中可用的中文字体
-        for (String chineseFontName : chineseFontNames) {
-            if (availableFonts.contains(chineseFontName)) {
-                font = new Font(chineseFontName, style, size);
-                if (isFontSupportChinese(font)) {
-                    return font;
-                }
-            }
-        }
-        
-        // 如果没有找到支持中文的字体，使用系统默认字体
-        font = new Font(Font.DIALOG, style, size);
-        if (isFontSupportChinese(font)) {
-            return font;
-        }
-        
-        // 最后的备选方案
-        return new Font(Font.SANS_SERIF, style, size);
-    }
-    
-    /**
-     * 检查字体是否支持中文字符
-     * @param font 要检查的字体
-     * @return 是否支持中文
-     */
-    private boolean isFontSupportChinese(Font font) {
-        // 测试一些常见的中文字符
-        String testChars = "你好水印测试";
-        for (int i = 0; i < testChars.length(); i++) {
-            if (font.canDisplay(testChars.charAt(i))) {
-                return true;
-            }
-        }
-        return false;
+        // 素材已按文本中心完成旋转
+        return new Placement(asset, posX, posY);
     }
 
     /**
-     * 添加图片水印
+     * 计算图片水印的位置，锚点为未旋转时的左上角
      */
-    private void addImageWatermark(Graphics2D g2d, WatermarkConfig config, int imageWidth, int imageHeight) {
+    private Placement placeImageWatermark(WatermarkConfig config, int imageWidth, int imageHeight,
+                                          double geometryScale) {
         File imageFile = config.getImageFile();
         if (imageFile == null || !imageFile.exists()) {
-            return;
+            return null;
         }
 
         try {
-            BufferedImage watermarkImage = ImageIO.read(imageFile);
-            float scale = (float) (config.getImageScale() / 100.0);
+            float scale = (float) (config.getImageScale() / 100.0 * geometryScale);
             float opacity = (float) (config.getImageOpacity() / 100.0);
             String position = config.getPosition();
             double rotation = config.getRotation();
 
-            int watermarkWidth = (int) (watermarkImage.getWidth() * scale);
-            int watermarkHeight = (int) (watermarkImage.getHeight() * scale);
+            // 缩放、透明度和旋转都已预先处理好，每张图片只需一次绘制
+            WatermarkAssetCache.ImageAsset asset = assetCache.getImageAsset(imageFile, scale, opacity, rotation);
+            if (asset == null) {
+                return null;
+            }
+            if (TILED.equals(position)) {
+                return placeTiled(asset, config, imageWidth, imageHeight, geometryScale);
+            }
+            int watermarkWidth = asset.getWidth();
+            int watermarkHeight = asset.getHeight();
 
             // 根据位置设置坐标
             int posX, posY;
@@ -295,85 +418,308 @@ public class WatermarkService {
                     posY = imageHeight - watermarkHeight;
                     break;
                 default: // 自定义位置
-                    posX = (int) config.getX();
-                    posY = (int) config.getY();
+                    posX = (int) (config.getX() * geometryScale);
+                    posY = (int) (config.getY() * geometryScale);
                     break;
             }
 
-            // 设置透明度
-            Composite oldComposite = g2d.getComposite();
-            if (opacity < 1.0f) {
-                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            }
-
-            // 应用旋转
-            if (rotation != 0) {
-                AffineTransform oldTransform = g2d.getTransform();
-                g2d.rotate(Math.toRadians(rotation), posX + watermarkWidth / 2.0, posY + watermarkHeight / 2.0);
-                g2d.drawImage(watermarkImage, posX, posY, watermarkWidth, watermarkHeight, null);
-                g2d.setTransform(oldTransform);
-            } else {
-                g2d.drawImage(watermarkImage, posX, posY, watermarkWidth, watermarkHeight, null);
-            }
-
-            // 恢复透明度设置
-            g2d.setComposite(oldComposite);
+            // 素材已绕自身中心旋转，按偏移量放回原位置
+            return new Placement(asset, posX, posY);
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
+    /**
+     * 计算平铺图案的位置：整张图片由一块预先生成的图案重复填满，
+     * 图案中第一个水印位于图片中心，间距与其它几何参数一样乘以 geometryScale
+     */
+    private Placement placeTiled(WatermarkAssetCache.ImageAsset asset, WatermarkConfig config,
+                                 int imageWidth, int imageHeight, double geometryScale) {
+        int spacing = (int) Math.round(config.getTileSpacing() * geometryScale);
+        BufferedImage sprite = asset.getSprite();
+        return new Placement(asset.getPattern(spacing),
+                (imageWidth - sprite.getWidth()) / 2, (imageHeight - sprite.getHeight()) / 2, true);
+    }
+
     /**
      * 保存图片到文件
      */
     public void saveImage(BufferedImage image, File outputFile, String format, int jpegQuality) throws IOException {
-        if ("JPEG".equalsIgnoreCase(format) || "JPG".equalsIgnoreCase(format)) {
-            // 处理JPEG透明度问题
-            BufferedImage jpegBufferedImage = new BufferedImage(
-                    image.getWidth(),
-                    image.getHeight(),
-                    BufferedImage.TYPE_INT_RGB);
-            Graphics2D g = jpegBufferedImage.createGraphics();
-            g.setColor(Color.WHITE);
-            g.fillRect(0, 0, image.getWidth(), image.getHeight());
-            g.drawImage(image, 0, 0, null);
-            g.dispose();
-            image = jpegBufferedImage;
+        saveImage(image, outputFile, format, jpegQuality, false);
+    }
+
+    /**
+     * 保存图片到文件
+     * JPEG 按指定质量编码并使用优化的哈夫曼表，可选渐进式编码。
+     * 编码和写盘的耗时分别记录到 StageMetrics
+     *
+     * @param image       图片
+     * @param outputFile  输出文件
+     * @param format      导出格式（PNG 或 JPEG）
+     * @param jpegQuality JPEG质量（0-100）
+     * @param progressive 是否使用渐进式JPEG
+     */
+    public void saveImage(BufferedImage image, File outputFile, String format, int jpegQuality,
+                          boolean progressive) throws IOException {
+        long start = System.nanoTime();
+        long writeNanos;
+        if (isJpeg(format)) {
+            // 处理JPEG透明度问题：带透明通道的图片先合成到白色背景上（composite 的结果已经合成过）
+            if (image.getColorModel().hasAlpha()) {
+                image = convert(image, true);
+            }
 
             // 保存JPEG图片
-            // 注意：ImageIO不直接支持JPEG质量设置，需要使用其他方法或第三方库
-            ImageIO.write(image, "JPEG", outputFile);
+            writeNanos = write(JPEG_WRITER.get(), image, createJpegParam(jpegQuality, progressive, true), outputFile,
+                    metrics);
         } else {
             // 保存PNG图片
-            ImageIO.write(image, "PNG", outputFile);
+            writeNanos = write(PNG_WRITER.get(), image, null, outputFile, metrics);
+        }
+        metrics.record(StageMetrics.Stage.ENCODE, System.nanoTime() - start - writeNanos);
+    }
+
+    /**
+     * 把图片编码到内存中，编码参数与 saveImage 相同
+     * 用于导出流水线：计算线程只编码，写盘由I/O线程通过 writeBytes 完成
+     *
+     * @return 编码后的文件内容
+     */
+    public byte[] encodeImage(BufferedImage image, String format, int jpegQuality, boolean progressive)
+            throws IOException {
+        long start = System.nanoTime();
+        ImageWriter writer;
+        ImageWriteParam param;
+        if (isJpeg(format)) {
+            if (image.getColorModel().hasAlpha()) {
+                image = convert(image, true);
+            }
+            writer = JPEG_WRITER.get();
+            param = createJpegParam(jpegQuality, progressive, true);
+        } else {
+            writer = PNG_WRITER.get();
+            param = null;
         }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.reset();
+        }
+        metrics.record(StageMetrics.Stage.ENCODE, System.nanoTime() - start);
+        return bytes.toByteArray();
     }
 
     /**
-     * 将Image转换为BufferedImage
+     * 把编码好的内容写入输出文件，与 write 一样经由临时文件和原子重命名
+     * 写盘（含重命名）的耗时和字节数记录到 StageMetrics
+     *
+     * @param encoded    编码后的文件内容
+     * @param outputFile 输出文件
+     * @param metrics    记录写盘耗时的统计
      */
-    private BufferedImage toBufferedImage(Image img) {
-        if (img instanceof BufferedImage) {
-            return (BufferedImage) img;
+    static void writeBytes(byte[] encoded, File outputFile, StageMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        Path tempPath = createTempFile(outputFile);
+        try {
+            Files.write(tempPath, encoded);
+            moveIntoPlace(tempPath, outputFile.toPath());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
         }
+        metrics.record(StageMetrics.Stage.WRITE, System.nanoTime() - start);
+        metrics.addBytesWritten(encoded.length);
+    }
 
-        // 创建 BufferedImage，使用完整图像尺寸
-        BufferedImage bufferedImage = new BufferedImage(
-                img.getWidth(null), img.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = bufferedImage.createGraphics();
-        g2d.drawImage(img, 0, 0, null);
-        g2d.dispose();
+    /**
+     * 创建JPEG编码参数
+     * 优化哈夫曼表和渐进式编码都需要编码器在内存中保存整张图片的DCT系数
+     *
+     * @param jpegQuality     JPEG质量（0-100）
+     * @param progressive     是否使用渐进式JPEG
+     * @param optimizeHuffman 是否优化哈夫曼表
+     */
+    static ImageWriteParam createJpegParam(int jpegQuality, boolean progressive, boolean optimizeHuffman) {
+        JPEGImageWriteParam param = new JPEGImageWriteParam(null);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.max(0, Math.min(100, jpegQuality)) / 100f);
+        param.setOptimizeHuffmanTables(optimizeHuffman);
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        return param;
+    }
 
-        return bufferedImage;
+    /**
+     * @return 当前线程的JPEG编码器
+     */
+    static ImageWriter jpegWriter() {
+        return JPEG_WRITER.get();
+    }
+
+    /**
+     * @return 当前线程的PNG编码器
+     */
+    static ImageWriter pngWriter() {
+        return PNG_WRITER.get();
+    }
+
+    /**
+     * 使用当前线程的编码器写出图片，写完后重置编码器以便下一张图片复用
+     * 图片先写入同一文件夹中的临时文件，完整写出后再原子地重命名为输出文件，
+     * 导出中途崩溃或失败不会留下写了一半的输出文件（临时文件在失败时删除，崩溃时留下的由 ExportJournal 打开时清理）。
+     * 写盘（含重命名）的耗时和字节数记录到 StageMetrics
+     *
+     * @return 写盘耗费的时间（纳秒），调用方据此从总耗时中扣除，得到编码本身的耗时
+     */
+    static long write(ImageWriter writer, BufferedImage image, ImageWriteParam param,
+                      File outputFile, StageMetrics metrics) throws IOException {
+        Path tempPath = createTempFile(outputFile);
+        MeteredImageOutputStream output = new MeteredImageOutputStream(tempPath.toFile());
+        long moveNanos;
+        try {
+            try {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.reset();
+                output.close();
+            }
+            long moveStart = System.nanoTime();
+            moveIntoPlace(tempPath, outputFile.toPath());
+            moveNanos = System.nanoTime() - moveStart;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        long writeNanos = output.writeNanos + moveNanos;
+        metrics.record(StageMetrics.Stage.WRITE, writeNanos);
+        metrics.addBytesWritten(outputFile.length());
+        return writeNanos;
+    }
+
+    /**
+     * 创建输出文件写入过程中使用的临时文件（同一文件夹中的隐藏文件 .<文件名>.<随机数>.part）
+     * 文件名带随机部分，同名输出的两次写出即使同时进行也各自使用自己的临时文件，不会互相删除或覆盖。
+     * 不使用 Files.createTempFile：它创建的文件只有所有者可以读写，重命名后输出文件会沿用这一权限
+     */
+    private static Path createTempFile(File outputFile) throws IOException {
+        Path folder = outputFile.getAbsoluteFile().toPath().getParent();
+        while (true) {
+            Path tempPath = folder.resolve("." + outputFile.getName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+            try {
+                return Files.createFile(tempPath);
+            } catch (FileAlreadyExistsException e) {
+                // 随机数重复，换一个
+            }
+        }
+    }
+
+    /**
+     * @return 文件名是否为 createTempFile 创建的临时文件
+     */
+    static boolean isTempFile(String fileName) {
+        return fileName.startsWith(".") && fileName.endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * 把临时文件重命名为输出文件，替换已有的旧文件
+     * 文件系统不支持原子重命名时退回普通的替换
+     */
+    private static void moveIntoPlace(Path tempPath, Path outputPath) throws IOException {
+        try {
+            Files.move(tempPath, outputPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 判断导出格式是否为JPEG
+     */
+    static boolean isJpeg(String format) {
+        return "JPEG".equalsIgnoreCase(format) || "JPG".equalsIgnoreCase(format);
+    }
+
+    /**
+     * 判断图像能否直接作为水印的绘制目标
+     * 灰度图和调色板图绘制彩色水印会丢失颜色，导出为JPEG时透明图需要先合成到白色背景上
+     *
+     * @param image   图像
+     * @param flatten 是否要去除透明通道
+     */
+    private static boolean needsConversion(BufferedImage image, boolean flatten) {
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof IndexColorModel
+                || colorModel.getColorSpace().getType() != ColorSpace.TYPE_RGB) {
+            return true;
+        }
+        return flatten && colorModel.hasAlpha();
+    }
+
+    /**
+     * 转换为编码器可以直接按行复制的 3BYTE_BGR（不透明）或 4BYTE_ABGR（透明）图像
+     *
+     * @param image   图像
+     * @param flatten 是否合成到白色背景上并去除透明通道
+     */
+    private static BufferedImage convert(BufferedImage image, boolean flatten) {
+        boolean alpha = image.getColorModel().hasAlpha() && !flatten;
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+                alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = converted.createGraphics();
+        if (!alpha) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        }
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+
+    private static ImageWriter createWriter(String formatName) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IllegalStateException("没有可用的" + formatName + "编码器");
+        }
+        return writers.next();
     }
 
     /**
      * 调整图片尺寸
+     * 包内可见，供基准测试（src/jmh）单独测量重采样
      * @param originalImage 原始图片
      * @param config 配置参数
      * @return 调整尺寸后的图片
      */
-    private BufferedImage resizeImage(BufferedImage originalImage, WatermarkConfig config) {
+    BufferedImage resizeImage(BufferedImage originalImage, WatermarkConfig config) {
+        long start = System.nanoTime();
+        Dimension target = getOutputSize(originalImage.getWidth(), originalImage.getHeight(), config);
+
+        // 直接重采样到目标尺寸，不再经过 getScaledInstance 的面积平均和额外的重绘
+        Resampler.Filter filter = Resampler.Filter.fromName(config.getResizeFilter());
+        BufferedImage resized = Resampler.resize(originalImage, target.width, target.height, filter);
+        metrics.record(StageMetrics.Stage.RESIZE, System.nanoTime() - start);
+        return resized;
+    }
+
+    /**
+     * 计算导出图片的尺寸
+     * @param originalWidth 原始宽度
+     * @param originalHeight 原始高度
+     * @param config 配置参数
+     * @return 未启用尺寸调整时为原始尺寸，否则为调整后的尺寸
+     */
+    public Dimension getOutputSize(int originalWidth, int originalHeight, WatermarkConfig config) {
+        if (!config.isResizeEnabled()) {
+            return new Dimension(originalWidth, originalHeight);
+        }
+
         int targetWidth, targetHeight;
         
         if (config.getResizeWidth() > 0 && config.getResizeHeight() > 0) {
@@ -382,8 +728,6 @@ public class WatermarkService {
             targetHeight = (int) config.getResizeHeight();
         } else {
             // 按比例调整
-            int originalWidth = originalImage.getWidth();
-            int originalHeight = originalImage.getHeight();
             double percentage = config.getResizePercentage() / 100.0;
             
             targetWidth = (int) (originalWidth * percentage);
@@ -393,16 +737,55 @@ public class WatermarkService {
         // 确保目标尺寸有效
         if (targetWidth <= 0) targetWidth = 1;
         if (targetHeight <= 0) targetHeight = 1;
-        
-        // 创建调整尺寸后的图片
-        Image scaledImage = originalImage.getScaledInstance(targetWidth, targetHeight, Image.SCALE_SMOOTH);
-        
-        // 转换为BufferedImage并返回
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = resizedImage.createGraphics();
-        g2d.drawImage(scaledImage, 0, 0, null);
-        g2d.dispose();
-        
-        return resizedImage;
+
+        return new Dimension(targetWidth, targetHeight);
+    }
+
+    /**
+     * 统计写盘耗时的文件输出流
+     * 编码器边编码边写出，写盘时间只能在每次写入时累计
+     */
+    private static class MeteredImageOutputStream extends FileImageOutputStream {
+        private long writeNanos;
+
+        MeteredImageOutputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            super.write(b);
+            writeNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            super.write(b, off, len);
+            writeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 水印素材及其在图片上的锚点位置
+     * 平铺时素材为平铺图案，位置为图案某个周期的左上角
+     */
+    private static class Placement {
+        private final WatermarkAssetCache.ImageAsset asset;
+        private final int x;
+        private final int y;
+        private final boolean tiled;
+
+        Placement(WatermarkAssetCache.ImageAsset asset, int x, int y) {
+            this(asset, x, y, false);
+        }
+
+        Placement(WatermarkAssetCache.ImageAsset asset, int x, int y, boolean tiled) {
+            this.asset = asset;
+            this.x = x;
+            this.y = y;
+            this.tiled = tiled;
+        }
     }
-}
\ No newline at end of file
+}